@@ -89,6 +89,17 @@ public class JsonPretty {
     //
     private static long LONG_MAX_MSD = 9000000000000000000l;
 
+    /**
+     * Pretty-print the JSON value read from in to out.  in must support
+     * mark().  This uses static state, so it must not be called by more
+     * than one thread at a time.
+     **/
+    public static void prettyPrint(Reader in, Writer out) throws IOException {
+        input = in;
+        output = out;
+        readJSON(0);
+    }
+
     public static void readJSON(int indent) throws IOException {
         if (!input.markSupported()) {
             throw new IOException("Reader.markSupported must be true");
@@ -575,10 +586,10 @@ public class JsonPretty {
 	    System.err.println("Usage:  jsonpretty [file.json]");
 	    System.exit(1);
 	}
-	input = new BufferedReader(new InputStreamReader(str, "UTF-8"));
+	Reader in = new BufferedReader(new InputStreamReader(str, "UTF-8"));
 	output = new OutputStreamWriter(System.out, "UTF-8");
 	try {
-	    readJSON(0);
+	    prettyPrint(in, output);
 	} finally {
 	    output.write('\n');
 	    output.flush();
@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import com.jovial.util.JsonIO;
+
+/**
+ * The documents the benchmarks run over.  Each kind of document is built
+ * from a fixed random seed, so every run sees exactly the same input.  A
+ * document is made by adding elements to a top-level array until it's
+ * at least the size asked for.
+ */
+public class Corpus {
+
+    /**
+     * The kinds of document
+     **/
+    public static final String[] KINDS = {
+        "numeric", "strings", "nested", "wide", "array"
+    };
+
+    private final Random random;
+
+    private Corpus(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Give the document of the given kind, at least size bytes long,
+     * as it's written by JsonIO.writeJSON.
+     **/
+    public static String make(String kind, int size) throws IOException {
+        Corpus c = new Corpus(kind.hashCode());
+        List<Object> doc = new ArrayList<Object>();
+        int length = 2;
+        while (length < size) {
+            Object element = c.element(kind);
+            doc.add(element);
+            length += JsonIO.valueToString(element).length() + 1;
+        }
+        StringWriter out = new StringWriter();
+        JsonIO.writeJSON(out, doc);
+        return out.toString();
+    }
+
+    private Object element(String kind) {
+        if (kind.equals("numeric")) {
+            return numeric();
+        } else if (kind.equals("strings")) {
+            return string(20 + random.nextInt(200));
+        } else if (kind.equals("nested")) {
+            return nested(50 + random.nextInt(50));
+        } else if (kind.equals("wide")) {
+            return wide(200 + random.nextInt(300));
+        } else if (kind.equals("array")) {
+            return record();
+        }
+        throw new IllegalArgumentException("No corpus " + kind);
+    }
+
+    //
+    // Integers, longs and doubles of all sizes
+    //
+    private Object numeric() {
+        List<Object> list = new ArrayList<Object>();
+        for (int i = 0; i < 32; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    list.add(random.nextInt(1000));
+                    break;
+                case 1:
+                    list.add(random.nextInt());
+                    break;
+                case 2:
+                    list.add(random.nextLong());
+                    break;
+                default:
+                    list.add(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+                    break;
+            }
+        }
+        return list;
+    }
+
+    //
+    // Mostly plain ASCII, with some escapes and non-ASCII characters
+    //
+    private String string(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int r = random.nextInt(100);
+            if (r < 85) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            } else if (r < 93) {
+                sb.append(' ');
+            } else if (r < 96) {
+                sb.append("\"\\\n\t".charAt(random.nextInt(4)));
+            } else {
+                sb.append("\u00e9\u00fc\u4e2d\u03bb".charAt(random.nextInt(4)));
+            }
+        }
+        return sb.toString();
+    }
+
+    //
+    // Objects and arrays nested depth deep
+    //
+    private Object nested(int depth) {
+        Object value = random.nextInt(100);
+        for (int i = 0; i < depth; i++) {
+            if (random.nextBoolean()) {
+                HashMap<Object, Object> m = new HashMap<Object, Object>();
+                m.put("k" + random.nextInt(4), value);
+                value = m;
+            } else {
+                List<Object> l = new ArrayList<Object>();
+                l.add(value);
+                value = l;
+            }
+        }
+        return value;
+    }
+
+    //
+    // An object with many members
+    //
+    private Object wide(int members) {
+        HashMap<Object, Object> m = new HashMap<Object, Object>();
+        for (int i = 0; i < members; i++) {
+            Object v = random.nextBoolean() ? (Object) random.nextInt(100000)
+                                            : (Object) string(8);
+            m.put("member" + i, v);
+        }
+        return m;
+    }
+
+    //
+    // A typical record, with the same keys every time
+    //
+    private Object record() {
+        HashMap<Object, Object> m = new HashMap<Object, Object>();
+        m.put("id", random.nextInt(1000000));
+        m.put("name", string(12));
+        m.put("active", random.nextBoolean());
+        m.put("score", random.nextDouble() * 100);
+        m.put("tags", java.util.Arrays.asList(string(5), string(7)));
+        m.put("parent", random.nextInt(10) == 0 ? null : (Object) random.nextInt(1000));
+        return m;
+    }
+}
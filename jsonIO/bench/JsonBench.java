@@ -0,0 +1,205 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import com.jovial.util.JsonBinary;
+import com.jovial.util.JsonIO;
+
+/**
+ * Benchmarks for JsonIO and JsonPretty.  Each benchmark is run over each
+ * kind of document in the Corpus, at several sizes.  For each, we warm up
+ * for a while, and then run a number of timed iterations.  The results
+ * are throughput in operations and megabytes per second, with the spread
+ * over the iterations, and the bytes allocated per operation, as counted
+ * by the JVM for the running thread.
+ * <p>
+ * Usage:
+ * <pre>
+ *      sh bench/run.sh [-b benchmark] [-c corpus] [-s size,size...]
+ *                      [-w warmup_seconds] [-m measure_seconds]
+ *                      [-i iterations] [-csv]
+ * </pre>
+ * -b and -c select the benchmarks and corpora whose names contain the
+ * given string.  The output can be compared between runs to judge a
+ * change; use the same machine and an otherwise idle system.
+ */
+public class JsonBench {
+
+    //
+    // One operation to measure, over a document in its various forms.
+    //
+    interface Op {
+        Object run(Input in) throws IOException;
+    }
+
+    //
+    // A document, prepared before the clock starts
+    //
+    static class Input {
+        final String text;
+        final byte[] bytes;
+        final Object value;
+        final byte[] binary;
+
+        Input(String text) throws IOException {
+            this.text = text;
+            this.bytes = text.getBytes(StandardCharsets.UTF_8);
+            this.value = JsonIO.stringToValue(text);
+            this.binary = JsonBinary.encode(value);
+        }
+    }
+
+    private static final String[] NAMES = {
+        "readJSON(Reader)", "readJSON(byte[])", "stringToValue",
+        "writeJSON(Writer)", "writeJSON(Stream)", "valueToString", "JsonPretty",
+        "JsonBinary.decode", "JsonBinary.encode"
+    };
+
+    private static final Op[] OPS = {
+        in -> JsonIO.readJSON(new BufferedReader(new StringReader(in.text))),
+        in -> JsonIO.readJSON(in.bytes),
+        in -> JsonIO.stringToValue(in.text),
+        in -> {
+            StringWriter w = new StringWriter(in.text.length());
+            JsonIO.writeJSON(w, in.value);
+            return w;
+        },
+        in -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(in.bytes.length);
+            JsonIO.writeJSON(out, in.value);
+            return out;
+        },
+        in -> JsonIO.valueToString(in.value),
+        in -> {
+            StringWriter w = new StringWriter(in.text.length() * 2);
+            JsonPretty.prettyPrint(new StringReader(in.text), w);
+            return w;
+        },
+        in -> JsonBinary.decode(in.binary),
+        in -> JsonBinary.encode(in.value)
+    };
+
+    //
+    // Results go here, so the JIT can't throw the work away
+    //
+    static volatile int sink;
+
+    private static final com.sun.management.ThreadMXBean THREADS
+        = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        String benchFilter = "";
+        String corpusFilter = "";
+        int[] sizes = { 1 << 10, 1 << 16, 1 << 20 };
+        double warmup = 1.0;
+        double measure = 2.0;
+        int iterations = 5;
+        boolean csv = false;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("-b")) {
+                benchFilter = args[++i];
+            } else if (a.equals("-c")) {
+                corpusFilter = args[++i];
+            } else if (a.equals("-s")) {
+                String[] s = args[++i].split(",");
+                sizes = new int[s.length];
+                for (int j = 0; j < s.length; j++) {
+                    sizes[j] = Integer.parseInt(s[j].trim());
+                }
+            } else if (a.equals("-w")) {
+                warmup = Double.parseDouble(args[++i]);
+            } else if (a.equals("-m")) {
+                measure = Double.parseDouble(args[++i]);
+            } else if (a.equals("-i")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (a.equals("-csv")) {
+                csv = true;
+            } else {
+                System.err.println("Unknown option " + a);
+                System.exit(1);
+            }
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        System.out.println(System.getProperty("java.vm.name") + " "
+                           + System.getProperty("java.version"));
+        if (csv) {
+            System.out.println("benchmark,corpus,bytes,ops_per_s,error_pct,"
+                               + "mb_per_s,alloc_bytes_per_op");
+        } else {
+            System.out.printf("%-18s %-8s %9s %12s %6s %9s %14s%n",
+                              "benchmark", "corpus", "bytes", "ops/s", "+-%",
+                              "MB/s", "alloc B/op");
+        }
+        for (String kind : Corpus.KINDS) {
+            if (!kind.contains(corpusFilter)) {
+                continue;
+            }
+            for (int size : sizes) {
+                Input in = new Input(Corpus.make(kind, size));
+                for (int b = 0; b < OPS.length; b++) {
+                    if (!NAMES[b].contains(benchFilter)) {
+                        continue;
+                    }
+                    double[] r = measure(OPS[b], in, warmup, measure, iterations);
+                    double mbs = r[0] * in.bytes.length / 1e6;
+                    if (csv) {
+                        System.out.printf("%s,%s,%d,%.1f,%.1f,%.2f,%d%n",
+                                          NAMES[b], kind, in.bytes.length,
+                                          r[0], r[1], mbs, (long) r[2]);
+                    } else {
+                        System.out.printf("%-18s %-8s %9d %12.1f %6.1f %9.2f %14d%n",
+                                          NAMES[b], kind, in.bytes.length,
+                                          r[0], r[1], mbs, (long) r[2]);
+                    }
+                }
+            }
+        }
+    }
+
+    //
+    // Measure op.  Return ops/second, its spread over the iterations as
+    // a percentage (two standard deviations), and bytes allocated per op.
+    //
+    private static double[] measure(Op op, Input in, double warmup,
+                                    double measure, int iterations)
+            throws IOException
+    {
+        long end = System.nanoTime() + (long) (warmup * 1e9);
+        while (System.nanoTime() < end) {
+            sink += System.identityHashCode(op.run(in));
+        }
+        long iterationNanos = (long) (measure * 1e9 / iterations);
+        double[] rates = new double[iterations];
+        long ops = 0;
+        long threadId = Thread.currentThread().getId();
+        long allocBefore = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            long n = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                sink += System.identityHashCode(op.run(in));
+                n++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < iterationNanos);
+            rates[i] = n * 1e9 / elapsed;
+            ops += n;
+        }
+        long alloc = THREADS.getThreadAllocatedBytes(threadId) - allocBefore;
+        double mean = 0;
+        for (double r : rates) {
+            mean += r;
+        }
+        mean /= iterations;
+        double var = 0;
+        for (double r : rates) {
+            var += (r - mean) * (r - mean);
+        }
+        double sd = (iterations > 1) ? Math.sqrt(var / (iterations - 1)) : 0;
+        return new double[] { mean, 200 * sd / mean, (double) alloc / ops };
+    }
+}
@@ -0,0 +1,12 @@
+#!/bin/sh
+#
+# Run the benchmarks.  Run from the jsonIO directory; arguments are
+# passed to JsonBench.
+#
+rm -rf bench_out
+javac -d bench_out `find src bench -name '*.java' -print` ../JsonPretty.java
+if [ $? != 0 ] ; then
+    exit 1
+fi
+java -Xms1g -Xmx1g -cp bench_out JsonBench "$@"
+rm -rf bench_out
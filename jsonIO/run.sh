@@ -1,6 +1,6 @@
 #!/bin/sh
 rm -rf out
-javac -d out `find . -name '*.java' -print`
+javac -d out `find src test -name '*.java' -print`
 if [ $? != 0 ] ; then
     exit 1
 fi
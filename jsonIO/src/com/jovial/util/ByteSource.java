@@ -0,0 +1,98 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Where the bytes for a parallel parse come from:  either a ByteBuffer,
+ * or a file that's mapped into memory a chunk at a time.  Offsets are
+ * relative to the start of the input.
+ *
+ * @see JsonLines
+ * @see ParallelArrayReader
+ */
+abstract class ByteSource {
+
+    abstract long size() throws IOException;
+
+    /**
+     * Give the offset just after the first newline at or after pos,
+     * or size() if there is none.
+     **/
+    abstract long nextLine(long pos) throws IOException;
+
+    /**
+     * Give the bytes in [start, end), which must be less than 2 GB.
+     **/
+    abstract ByteBuffer chunk(long start, long end) throws IOException;
+
+    static class BufferSource extends ByteSource {
+
+        private final ByteBuffer buf;
+        private final int base;
+
+        BufferSource(ByteBuffer buf) {
+            this.buf = buf;
+            this.base = buf.position();
+        }
+
+        long size() {
+            return buf.limit() - base;
+        }
+
+        long nextLine(long pos) {
+            int limit = buf.limit();
+            for (int i = base + (int) pos; i < limit; i++) {
+                if (buf.get(i) == '\n') {
+                    return i + 1 - base;
+                }
+            }
+            return limit - base;
+        }
+
+        ByteBuffer chunk(long start, long end) {
+            ByteBuffer b = buf.duplicate();
+            b.limit(base + (int) end);
+            b.position(base + (int) start);
+            return b.slice();
+        }
+    }
+
+    static class FileSource extends ByteSource {
+
+        private final FileChannel channel;
+
+        FileSource(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long size() throws IOException {
+            return channel.size();
+        }
+
+        long nextLine(long pos) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(8192);
+            for (;;) {
+                b.clear();
+                int n = channel.read(b, pos);
+                if (n <= 0) {
+                    return channel.size();
+                }
+                for (int i = 0; i < n; i++) {
+                    if (b.get(i) == '\n') {
+                        return pos + i + 1;
+                    }
+                }
+                pos += n;
+            }
+        }
+
+        ByteBuffer chunk(long start, long end) throws IOException {
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("Chunk too big at offset " + start);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.jovial.util;
+
+import java.io.*;
+
+/**
+ * A JsonLexer that reads characters from a java.io.Reader.  It does its
+ * own buffering, so the Reader need not support mark(), and there's no
+ * need to wrap it in a BufferedReader.
+ *
+ * @see JsonReader
+ */
+class CharLexer extends JsonLexer {
+
+    private Reader in;
+    private char[] buf;
+    private int pos;
+    private int limit;
+
+    CharLexer(Reader in) {
+        this.in = in;
+        this.buf = new char[8192];
+    }
+
+    /**
+     * Start over on the characters from in, keeping our buffers.
+     **/
+    void reset(Reader in) {
+        this.in = in;
+        this.pos = 0;
+        this.limit = 0;
+        trimScratch();
+    }
+
+    //
+    // Refill the buffer.  Return false on EOF.
+    //
+    private boolean fill() throws IOException {
+        for (;;) {
+            int n = in.read(buf, 0, buf.length);
+            if (n == -1) {
+                return false;
+            } else if (n > 0) {
+                pos = 0;
+                limit = n;
+                return true;
+            }
+        }
+    }
+
+    //
+    // Read one character, with no skipping of whitespace, or -1 on EOF.
+    //
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    int next() throws IOException {
+        for (;;) {
+            if (pos >= limit && !fill()) {
+                return -1;
+            }
+            char c = buf[pos++];
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                continue;
+            } else if (c == '/') {
+                skipSlashComment();
+            } else if (c == '#') {
+                skipToEOLN();
+            } else if (c > ' ' && c < 128 || !Character.isWhitespace(c)) {
+                return c;
+            }
+        }
+    }
+
+    private void skipSlashComment() throws IOException {
+        int c = read();
+        if (c == '/') {
+            skipToEOLN();
+        } else if (c == '*') {
+            boolean starSeen = false;
+            for (;;) {
+                c = read();
+                if (c == -1) {
+                    throw new IOException("Unexpected EOF");
+                } else if (starSeen && c == '/') {
+                    return;
+                }
+                starSeen = c == '*';
+            }
+        } else {
+            throw new IOException("Syntax error");
+        }
+    }
+
+    //
+    // Skip to the end of a line.  Unlike JsonIO.readJSON(Reader), we
+    // accept EOF as the end of a comment, since a stream of values
+    // can legitimately end with one.
+    //
+    private void skipToEOLN() throws IOException {
+        for (;;) {
+            int c = read();
+            if (c == -1 || c == '\n' || c == '\r') {
+                return;
+            }
+        }
+    }
+
+    String readString(int delimiter) throws IOException {
+        //
+        // Fast path:  The whole string is in the buffer, with no escapes.
+        //
+        for (int i = pos; i < limit; i++) {
+            char c = buf[i];
+            if (c == delimiter) {
+                String result = new String(buf, pos, i - pos);
+                pos = i + 1;
+                return result;
+            } else if (c == '\\') {
+                break;
+            }
+        }
+        StringBuilder sb = strBuf;
+        sb.setLength(0);
+        for (;;) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buf[pos];
+                if (c == delimiter || c == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            sb.append(buf, start, pos - start);
+            if (pos >= limit) {
+                if (!fill()) {
+                    throw new IOException("Unexpected EOF");
+                }
+                continue;
+            }
+            char c = buf[pos++];
+            if (c == delimiter) {
+                return sb.toString();
+            }
+            readEscape(sb);
+        }
+    }
+
+    String readKey(int delimiter, JsonKeyCache cache) throws IOException {
+        for (int i = pos; i < limit; i++) {
+            char c = buf[i];
+            if (c == delimiter) {
+                String result = cache.get(buf, pos, i - pos);
+                pos = i + 1;
+                return result;
+            } else if (c == '\\') {
+                break;
+            }
+        }
+        return cache.get(readString(delimiter));
+    }
+
+    //
+    // Read an escape sequence after the backslash, and append the result
+    // to sb.  If sb is null, the escape is just skipped.
+    //
+    private void readEscape(StringBuilder sb) throws IOException {
+        if (stats != null) {
+            stats.escapes++;
+        }
+        int c = read();
+        char result;
+        if (c == -1) {
+            throw new IOException("Unexpected EOF");
+        } else if (c == 'u' || c == 'x') {
+            int digits = (c == 'u') ? 4 : 2;
+            int val = 0;
+            for (int i = 0; i < digits; i++) {
+                val = val * 16 + hexValue(read());
+            }
+            result = (char) val;
+        } else {
+            result = unescape(c);
+        }
+        if (sb != null) {
+            sb.append(result);
+        }
+    }
+
+    void skipString(int delimiter) throws IOException {
+        for (;;) {
+            while (pos < limit) {
+                char c = buf[pos++];
+                if (c == delimiter) {
+                    return;
+                } else if (c == '\\') {
+                    readEscape(null);
+                }
+            }
+            if (!fill()) {
+                throw new IOException("Unexpected EOF");
+            }
+        }
+    }
+
+    void skipNested() throws IOException {
+        int depth = 1;
+        for (;;) {
+            while (pos < limit) {
+                char c = buf[pos++];
+                if (c == '"' || c == '\'') {
+                    skipString(c);
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        return;
+                    }
+                } else if (c == '/') {
+                    skipSlashComment();
+                } else if (c == '#') {
+                    skipToEOLN();
+                }
+            }
+            if (!fill()) {
+                throw new IOException("Unexpected EOF");
+            }
+        }
+    }
+
+    void readConstant(String wanted) throws IOException {
+        for (int i = 0; i < wanted.length(); i++) {
+            int ch = read();
+            if (ch != wanted.charAt(i)) {
+                JsonIO.throwUnexpected(ch);
+            }
+        }
+    }
+
+    void scanNumber(int initial) throws IOException {
+        int state = numberStart(initial);
+        numBuf[0] = (char) initial;
+        numLen = 1;
+        for (;;) {
+            if (pos >= limit && !fill()) {
+                numberEnd(state, -1);
+                return;
+            }
+            char c = buf[pos];
+            int next = numberNext(state, c);
+            if (next == NUM_END) {
+                numberEnd(state, c);
+                return;
+            }
+            state = next;
+            if (numLen == numBuf.length) {
+                growNumBuf();
+            }
+            numBuf[numLen++] = c;
+            pos++;
+        }
+    }
+
+    void skipNumber(int initial) throws IOException {
+        int state = numberStart(initial);
+        for (;;) {
+            if (pos >= limit && !fill()) {
+                return;
+            }
+            state = numberNext(state, buf[pos]);
+            if (state == NUM_END) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,160 @@
+package com.jovial.util;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable Map for JSON objects, that keeps its keys in the order
+ * they were read and takes much less memory than a HashMap.  The keys
+ * and values are held in one array, alternating.  Small maps are
+ * searched straight through the array, which for a handful of keys is as
+ * fast as hashing.  A map with more than LINEAR_MAX keys also gets an
+ * open-addressed table of int indices into the array.
+ * <p>
+ * For a JSON object with four members, a HashMap takes a table of 16
+ * slots and four entry objects; this takes one array of eight.
+ *
+ * @see JsonReader#setCompactMaps(boolean)
+ */
+final class CompactMap extends AbstractMap<Object, Object> {
+
+    //
+    // Maps with more keys than this get a hash index
+    //
+    static final int LINEAR_MAX = 8;
+
+    private final Object[] kv;          // key, value, key, value...
+    private final int[] index;          // 1 + entry number, 0 if empty
+
+    private CompactMap(Object[] kv, int[] index) {
+        this.kv = kv;
+        this.index = index;
+    }
+
+    /**
+     * Make a map from the keys and values in kv[off..off+len), which
+     * alternate.  If a key appears more than once, the last value is
+     * kept, at the position of the first, as HashMap would.
+     **/
+    static CompactMap of(Object[] kv, int off, int len) {
+        int n = len / 2;
+        Object[] a = new Object[len];
+        int[] index = (n > LINEAR_MAX) ? new int[tableSize(n)] : null;
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            Object key = kv[off + 2 * i];
+            Object value = kv[off + 2 * i + 1];
+            int found = (index == null) ? scan(a, size, key)
+                                        : lookup(a, index, key, true, size);
+            if (found >= 0) {
+                a[2 * found + 1] = value;
+            } else {
+                a[2 * size] = key;
+                a[2 * size + 1] = value;
+                size++;
+            }
+        }
+        if (size < n) {
+            a = Arrays.copyOf(a, 2 * size);
+        }
+        return new CompactMap(a, index);
+    }
+
+    //
+    // A power of two at least twice n, so probe chains stay short
+    //
+    private static int tableSize(int n) {
+        return Integer.highestOneBit(n * 2 - 1) << 1;
+    }
+
+    private static int scan(Object[] kv, int size, Object key) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(kv[2 * i], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //
+    // Find key in the hash index, and return its entry number, or -1.
+    // If insert is true and it's not there, newEntry is put in the index
+    // for it.
+    //
+    private static int lookup(Object[] kv, int[] index, Object key,
+                              boolean insert, int newEntry)
+    {
+        int mask = index.length - 1;
+        int h = Objects.hashCode(key);
+        int i = (h ^ (h >>> 16)) & mask;
+        for (;;) {
+            int e = index[i];
+            if (e == 0) {
+                if (insert) {
+                    index[i] = newEntry + 1;
+                }
+                return -1;
+            } else if (Objects.equals(kv[2 * (e - 1)], key)) {
+                return e - 1;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private int find(Object key) {
+        if (index == null) {
+            return scan(kv, kv.length / 2, key);
+        }
+        return lookup(kv, index, key, false, 0);
+    }
+
+    public int size() {
+        return kv.length / 2;
+    }
+
+    public Object get(Object key) {
+        int i = find(key);
+        return (i < 0) ? null : kv[2 * i + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    public void forEach(BiConsumer<? super Object, ? super Object> action) {
+        for (int i = 0; i < kv.length; i += 2) {
+            action.accept(kv[i], kv[i + 1]);
+        }
+    }
+
+    //
+    // Not cached, since a field would cost every map more than the view
+    // costs the occasional caller.
+    //
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<Object, Object>>() {
+            public int size() {
+                return kv.length / 2;
+            }
+
+            public Iterator<Map.Entry<Object, Object>> iterator() {
+                return new Iterator<Map.Entry<Object, Object>>() {
+                    private int i = 0;
+
+                    public boolean hasNext() {
+                        return i < kv.length;
+                    }
+
+                    public Map.Entry<Object, Object> next() {
+                        if (i >= kv.length) {
+                            throw new NoSuchElementException();
+                        }
+                        i += 2;
+                        return new AbstractMap.SimpleImmutableEntry<Object, Object>(
+                                            kv[i - 2], kv[i - 1]);
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+package com.jovial.util;
+
+import java.math.BigInteger;
+
+/**
+ * Correctly rounded conversion of decimal numbers to double, straight
+ * from the scanned digits.  A number is given as an unsigned 64 bit
+ * significand w and a decimal exponent q, so its value is w * 10^q.
+ * <p>
+ * Most numbers are handled by Clinger's fast path, where w and 10^q are
+ * both exact doubles and one multiply or divide gives the right answer.
+ * The rest go through the Eisel-Lemire algorithm, which multiplies w by a
+ * 128 bit approximation of 5^q.  In the rare cases where that can't
+ * decide the rounding, NaN is returned, and the caller falls back on
+ * Double.parseDouble.
+ * <p>
+ * See Daniel Lemire, "Number Parsing at a Gigabyte per Second",
+ * Software: Practice and Experience 51 (8), 2021.
+ */
+final class DoubleParser {
+
+    private DoubleParser() {
+    }
+
+    //
+    // A significand is accumulated until it reaches this value; digits
+    // after that are dropped, and the result is marked as truncated.
+    //
+    static final long SIGNIFICAND_LIMIT = 1000000000000000000L;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final int SMALLEST_POWER = -342;
+    private static final int LARGEST_POWER = 308;
+
+    //
+    // 128 bit approximations of 5^q for SMALLEST_POWER <= q <= LARGEST_POWER,
+    // normalized so that the top bit is set.  Each takes two entries, high
+    // word first.  They're computed rather than written out, following the
+    // generator script that comes with the paper.
+    //
+    private static final long[] POWERS_OF_FIVE
+            = new long[2 * (LARGEST_POWER - SMALLEST_POWER + 1)];
+
+    static {
+        BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+        BigInteger two127 = BigInteger.ONE.shiftLeft(127);
+        BigInteger five = BigInteger.valueOf(5);
+        for (int q = SMALLEST_POWER; q <= LARGEST_POWER; q++) {
+            BigInteger c;
+            if (q < 0) {
+                BigInteger power5 = five.pow(-q);
+                int z = power5.subtract(BigInteger.ONE).bitLength();
+                int b = (q >= -27) ? (z + 127) : (2 * z + 128);
+                c = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+            } else {
+                c = five.pow(q);
+                while (c.compareTo(two127) < 0) {
+                    c = c.shiftLeft(1);
+                }
+            }
+            while (c.compareTo(two128) >= 0) {
+                c = c.shiftRight(1);
+            }
+            int i = 2 * (q - SMALLEST_POWER);
+            POWERS_OF_FIVE[i] = c.shiftRight(64).longValue();
+            POWERS_OF_FIVE[i + 1] = c.longValue();
+        }
+    }
+
+    /**
+     * Give the double nearest to w * 10^q, negated if negative is true.
+     * w is unsigned.  If truncated is true, w is known to be missing some
+     * non-zero digits, so the real value is somewhere between w * 10^q
+     * and (w + 1) * 10^q.  NaN is returned if the answer can't be
+     * determined from w and q alone.
+     **/
+    static double toDouble(boolean negative, long w, int q, boolean truncated) {
+        double d = toDouble(w, q);
+        if (truncated && d != toDouble(w + 1, q)) {
+            d = Double.NaN;
+        }
+        return negative ? -d : d;
+    }
+
+    //
+    // Convert w * 10^q, or return NaN.
+    //
+    private static double toDouble(long w, int q) {
+        if (w == 0) {
+            return 0.0;
+        } else if (w > 0 && w <= (1L << 53) && q >= -22 && q <= 22) {
+            // Clinger's fast path:  w and 10^q are exact, so there's
+            // only one rounding.
+            if (q < 0) {
+                return w / POWERS_OF_TEN[-q];
+            } else {
+                return w * POWERS_OF_TEN[q];
+            }
+        } else if (q < SMALLEST_POWER) {
+            return 0.0;
+        } else if (q > LARGEST_POWER) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+        int index = 2 * (q - SMALLEST_POWER);
+        long high = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index]);
+        long low = w * POWERS_OF_FIVE[index];
+        final long precisionMask = -1L >>> 55;      // 52 bits + 3
+        if ((high & precisionMask) == precisionMask) {
+            // The low word of the power might change the result
+            long secondHigh = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0) {
+                high++;
+            }
+        }
+        if (low == -1L && (q < -27 || q > 55)) {
+            return Double.NaN;      // Too close to call
+        }
+
+        int upperBit = (int) (high >>> 63);
+        long mantissa = high >>> (upperBit + 64 - 52 - 3);
+        int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz + 1023;
+        if (power2 <= 0) {
+            // Subnormal
+            if (-power2 + 1 >= 64) {
+                return 0.0;
+            }
+            mantissa >>>= -power2 + 1;
+            mantissa += (mantissa & 1);
+            mantissa >>>= 1;
+            power2 = (mantissa < (1L << 52)) ? 0 : 1;
+            return Double.longBitsToDouble(((long) power2 << 52) | mantissa);
+        }
+        if ((low == 0 || low == 1) && q >= -4 && q <= 23
+                && (mantissa & 3) == 1) {
+            // Exactly halfway between two doubles; round to even
+            if ((mantissa << (upperBit + 64 - 52 - 3)) == high) {
+                mantissa &= ~1L;
+            }
+        }
+        mantissa += (mantissa & 1);
+        mantissa >>>= 1;
+        if (mantissa >= (2L << 52)) {
+            mantissa = 1L << 52;
+            power2++;
+        }
+        mantissa &= ~(1L << 52);
+        if (power2 >= 0x7ff) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Double.longBitsToDouble(((long) power2 << 52) | mantissa);
+    }
+
+    //
+    // The high 64 bits of the unsigned 128 bit product of a and b
+    //
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+}
@@ -0,0 +1,549 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A compact binary encoding for the same values JsonIO reads and writes,
+ * for exchanging data between programs where nobody needs to read it.
+ * Decoding is much faster than parsing JSON text:  there's nothing to
+ * scan for, every length is known up front, and numbers need no
+ * conversion.
+ * <p>
+ * An encoded value is the byte 0xA1 (the format version), followed by
+ * the value.  Each value is a tag byte, followed by:
+ * <pre>
+ *      NULL, FALSE, TRUE       nothing
+ *      INTEGER                 a zigzag varint
+ *      DOUBLE                  8 bytes of IEEE 754, big-endian
+ *      STRING                  a varint byte count, then UTF-8
+ *      ARRAY                   a varint count, then the elements
+ *      MAP                     a varint count, then key, value pairs
+ *      INTEGER_ARRAY           a varint count, then zigzag varints
+ *      DOUBLE_ARRAY            a varint count, then 8 byte doubles
+ *      KEY                     like STRING; the key is also added to
+ *                              the document's key dictionary
+ *      KEY_REF                 a varint index into the key dictionary
+ * </pre>
+ * With the key dictionary, each distinct string key is sent once per
+ * document, and later uses of it take a byte or two.  This is a big win
+ * for arrays of records.
+ * <p>
+ * Decoding gives the same result that JsonIO.readJSON would give for the
+ * JSON text of the value:  integers come back as Integer when they fit,
+ * and otherwise as Long; Float comes back as the Double that its text
+ * would be read as; and arrays of any kind come back as ArrayList.  The
+ * encoding goes a little beyond JSON, in that NaN, infinities and
+ * strings with unpaired surrogates survive the trip.
+ *
+ * @see JsonIO
+ */
+@SuppressWarnings("unchecked")
+public final class JsonBinary {
+
+    private static final int VERSION = 0xa1;
+
+    //
+    // Tags
+    //
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 4;
+    private static final int STRING = 5;
+    private static final int ARRAY = 6;
+    private static final int MAP = 7;
+    private static final int INTEGER_ARRAY = 8;
+    private static final int DOUBLE_ARRAY = 9;
+    private static final int KEY = 10;
+    private static final int KEY_REF = 11;
+
+    //
+    // No public constructor
+    //
+    private JsonBinary() {
+    }
+
+    /**
+     * Encode value, with a key dictionary.  The value must correspond to
+     * the JSON type as described in the JsonIO class documentation.
+     *
+     * @throws  IOException if value contains an invalid type.
+     **/
+    public static byte[] encode(Object value) throws IOException {
+        return encode(value, true);
+    }
+
+    /**
+     * Encode value, with or without a key dictionary.
+     *
+     * @see #encode(Object)
+     **/
+    public static byte[] encode(Object value, boolean keyDictionary)
+            throws IOException
+    {
+        Encoder e = new Encoder(null, keyDictionary);
+        e.writeValue(value);
+        return Arrays.copyOf(e.buf, e.count);
+    }
+
+    /**
+     * Encode value to out, with or without a key dictionary.  out isn't
+     * flushed.
+     *
+     * @throws  IOException if there is an underlying IO exception, or if
+     *                      value contains an invalid type.
+     **/
+    public static void write(OutputStream out, Object value,
+                             boolean keyDictionary) throws IOException
+    {
+        Encoder e = new Encoder(out, keyDictionary);
+        e.writeValue(value);
+        e.drain();
+    }
+
+    /**
+     * Decode a value.
+     *
+     * @throws  IOException if buf doesn't hold a valid encoding.
+     **/
+    public static Object decode(byte[] buf) throws IOException {
+        return decode(ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Decode a value from buf, starting at its position.  buf will be
+     * positioned just after the value.
+     *
+     * @throws  IOException if buf doesn't hold a valid encoding.
+     **/
+    public static Object decode(ByteBuffer buf) throws IOException {
+        Decoder d = new Decoder(buf);
+        if (d.readByte() != VERSION) {
+            throw new IOException("Not binary JSON, or the wrong version");
+        }
+        Object result = d.readValue();
+        buf.position(d.pos);
+        return result;
+    }
+
+    private static final class Encoder {
+
+        private final OutputStream out;     // null if we're making a byte[]
+        private byte[] buf;
+        private int count;
+        private final HashMap<String, Integer> keys;
+
+        Encoder(OutputStream out, boolean keyDictionary) {
+            this.out = out;
+            this.buf = new byte[(out == null) ? 256 : 8192];
+            this.keys = keyDictionary ? new HashMap<String, Integer>() : null;
+            buf[count++] = (byte) VERSION;
+        }
+
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof String) {
+                writeString(STRING, (String) value);
+            } else if (value instanceof Integer || value instanceof Long
+                       || value instanceof Short || value instanceof Byte) {
+                writeByte(INTEGER);
+                writeZigZag(((Number) value).longValue());
+            } else if (value instanceof Double) {
+                writeByte(DOUBLE);
+                writeDouble(((Double) value).doubleValue());
+            } else if (value instanceof Float) {
+                //
+                // Match what readJSON gives for the Float's text
+                //
+                writeByte(DOUBLE);
+                writeDouble(Double.parseDouble(value.toString()));
+            } else if (value instanceof Boolean) {
+                writeByte(((Boolean) value).booleanValue() ? TRUE : FALSE);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeByte(MAP);
+                writeVarint(map.size());
+                for (Map.Entry<?, ?> ent : map.entrySet()) {
+                    writeKey(ent.getKey());
+                    writeValue(ent.getValue());
+                }
+            } else if (value instanceof List) {
+                List list = (List) value;
+                writeByte(ARRAY);
+                writeVarint(list.size());
+                if (list instanceof RandomAccess) {
+                    for (int i = 0; i < list.size(); i++) {
+                        writeValue(list.get(i));
+                    }
+                } else {
+                    for (Object v : list) {
+                        writeValue(v);
+                    }
+                }
+            } else if (value instanceof Object[]) {
+                Object[] arr = (Object[]) value;
+                writeByte(ARRAY);
+                writeVarint(arr.length);
+                for (int i = 0; i < arr.length; i++) {
+                    writeValue(arr[i]);
+                }
+            } else if (value instanceof int[]) {
+                int[] arr = (int[]) value;
+                writeByte(INTEGER_ARRAY);
+                writeVarint(arr.length);
+                for (int i = 0; i < arr.length; i++) {
+                    writeZigZag(arr[i]);
+                }
+            } else if (value instanceof long[]) {
+                long[] arr = (long[]) value;
+                writeByte(INTEGER_ARRAY);
+                writeVarint(arr.length);
+                for (int i = 0; i < arr.length; i++) {
+                    writeZigZag(arr[i]);
+                }
+            } else if (value instanceof double[]) {
+                double[] arr = (double[]) value;
+                writeByte(DOUBLE_ARRAY);
+                writeVarint(arr.length);
+                for (int i = 0; i < arr.length; i++) {
+                    writeDouble(arr[i]);
+                }
+            } else if (value instanceof float[]) {
+                float[] arr = (float[]) value;
+                writeByte(DOUBLE_ARRAY);
+                writeVarint(arr.length);
+                for (int i = 0; i < arr.length; i++) {
+                    writeDouble(Double.parseDouble(Float.toString(arr[i])));
+                }
+            } else if (value instanceof JsonString) {
+                writeString(STRING, value.toString());
+            } else if (value instanceof JsonNumber) {
+                writeValue(((JsonNumber) value).value());
+            } else {
+                throw new IOException("Invalid type " + value.getClass()
+                                      + " for " + value);
+            }
+        }
+
+        private void writeKey(Object key) throws IOException {
+            if (keys == null || !(key instanceof String)) {
+                writeValue(key);
+                return;
+            }
+            Integer index = keys.get(key);
+            if (index == null) {
+                keys.put((String) key, keys.size());
+                writeString(KEY, (String) key);
+            } else {
+                writeByte(KEY_REF);
+                writeVarint(index.intValue());
+            }
+        }
+
+        //
+        // Write a tag, then s as a count and UTF-8 bytes.  Unpaired
+        // surrogates are encoded as if they were characters, so they
+        // survive.
+        //
+        private void writeString(int tag, String s) throws IOException {
+            int len = s.length();
+            int utf8 = len;
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    utf8 += (c < 0x800) ? 1 : 2;
+                    if (Character.isHighSurrogate(c) && i + 1 < len
+                            && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        i++;    // Four bytes for the pair
+                    }
+                }
+            }
+            writeByte(tag);
+            writeVarint(utf8);
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                ensure(4);
+                if (c < 0x80) {
+                    buf[count++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[count++] = (byte) (0xc0 | (c >> 6));
+                    buf[count++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < len
+                           && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[count++] = (byte) (0xf0 | (cp >> 18));
+                    buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buf[count++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    buf[count++] = (byte) (0xe0 | (c >> 12));
+                    buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    buf[count++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+        }
+
+        private void writeByte(int b) throws IOException {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        private void writeVarint(long v) throws IOException {
+            ensure(10);
+            while ((v & ~0x7fL) != 0) {
+                buf[count++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        private void writeZigZag(long v) throws IOException {
+            writeVarint((v << 1) ^ (v >> 63));
+        }
+
+        private void writeDouble(double d) throws IOException {
+            ensure(8);
+            long bits = Double.doubleToRawLongBits(d);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[count++] = (byte) (bits >>> shift);
+            }
+        }
+
+        private void ensure(int n) throws IOException {
+            if (count + n <= buf.length) {
+                return;
+            } else if (out != null) {
+                drain();
+            } else {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+            }
+        }
+
+        void drain() throws IOException {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    private static final class Decoder {
+
+        private final ByteBuffer buf;
+        private final byte[] array;     // buf's array, or null
+        private final int arrayOffset;
+        int pos;
+        private final int limit;
+        private ArrayList<String> keys = null;
+        private char[] chars = new char[64];
+
+        Decoder(ByteBuffer buf) {
+            this.buf = buf;
+            this.pos = buf.position();
+            this.limit = buf.limit();
+            if (buf.hasArray()) {
+                array = buf.array();
+                arrayOffset = buf.arrayOffset();
+            } else {
+                array = null;
+                arrayOffset = 0;
+            }
+        }
+
+        int readByte() throws IOException {
+            if (pos >= limit) {
+                throw new IOException("Unexpected end of binary JSON");
+            }
+            return buf.get(pos++) & 0xff;
+        }
+
+        Object readValue() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case INTEGER:
+                    return integer(readZigZag());
+                case DOUBLE:
+                    return readDouble();
+                case STRING:
+                    return readString();
+                case ARRAY: {
+                    int n = readCount(1);
+                    ArrayList result = new ArrayList(n);
+                    for (int i = 0; i < n; i++) {
+                        result.add(readValue());
+                    }
+                    return result;
+                }
+                case MAP: {
+                    int n = readCount(2);
+                    HashMap result = new HashMap(Math.max(16, (int) (n / 0.75f) + 1));
+                    for (int i = 0; i < n; i++) {
+                        Object key = readKey();
+                        result.put(key, readValue());
+                    }
+                    return result;
+                }
+                case INTEGER_ARRAY: {
+                    int n = readCount(1);
+                    ArrayList result = new ArrayList(n);
+                    for (int i = 0; i < n; i++) {
+                        result.add(integer(readZigZag()));
+                    }
+                    return result;
+                }
+                case DOUBLE_ARRAY: {
+                    int n = readCount(8);
+                    ArrayList result = new ArrayList(n);
+                    for (int i = 0; i < n; i++) {
+                        result.add(readDouble());
+                    }
+                    return result;
+                }
+                default:
+                    throw new IOException("Bad tag " + tag + " in binary JSON");
+            }
+        }
+
+        private Object readKey() throws IOException {
+            if (pos < limit) {
+                int tag = buf.get(pos) & 0xff;
+                if (tag == KEY) {
+                    pos++;
+                    String key = readString();
+                    if (keys == null) {
+                        keys = new ArrayList<String>();
+                    }
+                    keys.add(key);
+                    return key;
+                } else if (tag == KEY_REF) {
+                    pos++;
+                    long index = readVarint();
+                    if (keys == null || index >= keys.size()) {
+                        throw new IOException("Bad key index " + index);
+                    }
+                    return keys.get((int) index);
+                }
+            }
+            return readValue();
+        }
+
+        //
+        // Give an integer as readJSON would
+        //
+        private static Number integer(long v) {
+            if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+                return Integer.valueOf((int) v);
+            }
+            return Long.valueOf(v);
+        }
+
+        //
+        // Read a count of things that each take at least size bytes.
+        // Checking it against what's left guards against huge
+        // allocations from bad input.
+        //
+        private int readCount(int size) throws IOException {
+            long n = readVarint();
+            if (n < 0 || n > (limit - pos) / size) {
+                throw new IOException("Bad count " + n + " in binary JSON");
+            }
+            return (int) n;
+        }
+
+        private long readVarint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7f) << shift;
+                if (b < 0x80) {
+                    return result;
+                }
+            }
+            throw new IOException("Bad varint in binary JSON");
+        }
+
+        private long readZigZag() throws IOException {
+            long v = readVarint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        private double readDouble() throws IOException {
+            if (limit - pos < 8) {
+                throw new IOException("Unexpected end of binary JSON");
+            }
+            //
+            // Big-endian, whatever order buf is set to
+            //
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (buf.get(pos++) & 0xff);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        private String readString() throws IOException {
+            int n = readCount(1);
+            int start = pos;
+            pos += n;
+            if (array != null) {
+                int off = arrayOffset + start;
+                boolean ascii = true;
+                for (int i = 0; i < n; i++) {
+                    if (array[off + i] < 0) {
+                        ascii = false;
+                        break;
+                    }
+                }
+                if (ascii) {
+                    return new String(array, off, n, StandardCharsets.ISO_8859_1);
+                }
+            }
+            return decodeUtf8(start, n);
+        }
+
+        //
+        // Decode UTF-8 ourselves, so that encoded surrogates come through
+        // as they went in.
+        //
+        private String decodeUtf8(int start, int n) throws IOException {
+            if (chars.length < n) {
+                chars = new char[Math.max(n, chars.length * 2)];
+            }
+            char[] cb = chars;
+            int len = 0;
+            int end = start + n;
+            for (int i = start; i < end; ) {
+                int b = buf.get(i++) & 0xff;
+                if (b < 0x80) {
+                    cb[len++] = (char) b;
+                } else if ((b & 0xe0) == 0xc0 && i < end) {
+                    cb[len++] = (char) (((b & 0x1f) << 6) | (buf.get(i++) & 0x3f));
+                } else if ((b & 0xf0) == 0xe0 && i + 1 < end) {
+                    int c = ((b & 0x0f) << 12) | ((buf.get(i) & 0x3f) << 6)
+                            | (buf.get(i + 1) & 0x3f);
+                    i += 2;
+                    cb[len++] = (char) c;
+                } else if ((b & 0xf8) == 0xf0 && i + 2 < end) {
+                    int cp = ((b & 0x07) << 18) | ((buf.get(i) & 0x3f) << 12)
+                             | ((buf.get(i + 1) & 0x3f) << 6)
+                             | (buf.get(i + 2) & 0x3f);
+                    i += 3;
+                    cb[len++] = Character.highSurrogate(cp);
+                    cb[len++] = Character.lowSurrogate(cp);
+                } else {
+                    throw new IOException("Invalid UTF-8 in binary JSON");
+                }
+            }
+            return new String(cb, 0, len);
+        }
+    }
+}
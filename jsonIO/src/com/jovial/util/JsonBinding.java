@@ -0,0 +1,760 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.BaseStream;
+
+/**
+ * Reads JSON straight into Java objects, and writes them back out,
+ * without building the HashMap/ArrayList form in between.  Records and
+ * plain old Java objects are supported:
+ * <ul>
+ *   <li>A record is read through its canonical constructor, and written
+ *       from its components.</li>
+ *   <li>Any other class needs a no-argument constructor.  Its non-static,
+ *       non-transient fields, including those of its superclasses, are
+ *       read and written directly; private fields are fine.  Final fields
+ *       are written, but can't be read.  A superclass field hidden by a
+ *       subclass field of the same name is left out.</li>
+ * </ul>
+ * Members are matched to JSON object members by name.  Members that are
+ * missing from the JSON are left with their default values, and JSON
+ * members with no matching member are skipped.
+ * <p>
+ * Members can be primitives and their wrappers, String, Number, enums
+ * (written as their name), arrays, List, Set, Collection, Map with String,
+ * Object or enum keys, other records and classes, or Object, which gives
+ * the same value JsonIO.readJSON would.  Generic element types are taken
+ * from the declared types of the members.  A number read into an integral
+ * type must be a whole number in its range, so 3.9 or 2147483648 for an
+ * int is an error rather than being rounded or wrapped.  In a member
+ * declared as Object, an Iterable, Iterator, Stream or Supplier is written
+ * lazily, as JsonWriter writes it.
+ * <p>
+ * The work of looking at a class is done once, the first time the class
+ * is used:  a codec is built holding MethodHandles for its constructor and
+ * members, and cached for later use.  There is no reflective access while
+ * reading or writing.
+ *
+ * @see JsonReader
+ * @see JsonWriter
+ */
+@SuppressWarnings("unchecked")
+public final class JsonBinding {
+
+    //
+    // No public constructor
+    //
+    private JsonBinding() {
+    }
+
+    private static final ClassValue<Codec> CODECS = new ClassValue<Codec>() {
+        protected Codec computeValue(Class<?> type) {
+            if (isBean(type)) {
+                return new ObjectCodec(type);
+            }
+            return forType(type);
+        }
+    };
+
+    /**
+     * Read the next value from rdr as an instance of type.
+     *
+     * @throws  IOException if there is an underlying IO exception, or a
+     *                      syntax error, or the JSON doesn't fit type.
+     * @throws  IllegalArgumentException if type can't be bound.
+     **/
+    public static <T> T read(JsonReader rdr, Class<T> type) throws IOException {
+        return (T) readValue(rdr, CODECS.get(type));
+    }
+
+    /**
+     * Read a UTF-8 encoded JSON value as an instance of type.
+     *
+     * @see #read(JsonReader, Class)
+     **/
+    public static <T> T read(byte[] buf, Class<T> type) throws IOException {
+        return read(new JsonReader(buf), type);
+    }
+
+    /**
+     * Write value to out as JSON.  Records and other classes are written
+     * as objects; anything else is written as JsonWriter would, except that
+     * the elements of collections, arrays and maps can be records and
+     * classes too.
+     *
+     * @throws  IOException if there is an underlying IO exception.
+     * @throws  IllegalArgumentException if a class can't be bound.
+     **/
+    public static void write(JsonWriter out, Object value) throws IOException {
+        DYNAMIC.write(out, value);
+    }
+
+    /**
+     * Give value as a JSON string.
+     *
+     * @see #write(JsonWriter, Object)
+     **/
+    public static String toJSON(Object value) throws IOException {
+        StringWriter sw = new StringWriter();
+        JsonWriter w = new JsonWriter(sw);
+        write(w, value);
+        w.flush();
+        return sw.toString();
+    }
+
+    //
+    // Is type a record or class that we bind as an object?
+    //
+    private static boolean isBean(Class<?> type) {
+        if (type.isRecord()) {
+            return true;
+        }
+        return !type.isPrimitive() && !type.isArray() && !type.isEnum()
+                && !type.isInterface()
+                && !Modifier.isAbstract(type.getModifiers())
+                && !type.getName().startsWith("java.");
+    }
+
+    private static Object readValue(JsonReader rdr, Codec codec)
+            throws IOException
+    {
+        if (rdr.peek() == JsonReader.Token.NULL) {
+            rdr.nextNull();
+            return codec.nullValue;
+        }
+        return codec.read(rdr);
+    }
+
+    private static void writeValue(JsonWriter w, Codec codec, Object value)
+            throws IOException
+    {
+        if (value == null) {
+            w.write(null);
+        } else {
+            codec.write(w, value);
+        }
+    }
+
+    //
+    // Give the codec for a declared type.  Records and classes are looked
+    // up when they're used, so that types can refer to themselves.
+    //
+    private static Codec forType(Type type) {
+        if (type instanceof Class) {
+            Class<?> c = (Class<?>) type;
+            if (isBean(c)) {
+                return new ClassRef(c);
+            }
+            return forClass(c);
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType) type;
+            Class<?> raw = (Class<?>) pt.getRawType();
+            Type[] args = pt.getActualTypeArguments();
+            if (Map.class.isAssignableFrom(raw) && args.length == 2) {
+                return new MapCodec(raw, args[0], forType(args[1]));
+            } else if (Collection.class.isAssignableFrom(raw) && args.length == 1) {
+                return new CollectionCodec(raw, forType(args[0]));
+            }
+            return forType(raw);
+        } else if (type instanceof GenericArrayType) {
+            Type component = ((GenericArrayType) type).getGenericComponentType();
+            return new ArrayCodec(erase(component), forType(component));
+        } else if (type instanceof WildcardType) {
+            return forType(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof TypeVariable) {
+            return forType(((TypeVariable) type).getBounds()[0]);
+        }
+        throw new IllegalArgumentException("Can't bind " + type);
+    }
+
+    //
+    // The codec for a class that isn't a record or bean
+    //
+    private static Codec forClass(Class<?> c) {
+        if (c == Object.class) {
+            return DYNAMIC;
+        } else if (c.isEnum()) {
+            return new EnumCodec(c);
+        } else if (c.isArray()) {
+            Class<?> component = c.getComponentType();
+            return new ArrayCodec(component, forType(component));
+        } else if (Map.class.isAssignableFrom(c)) {
+            return new MapCodec(c, Object.class, DYNAMIC);
+        } else if (Collection.class.isAssignableFrom(c)) {
+            return new CollectionCodec(c, DYNAMIC);
+        }
+        for (int i = 0; i < SCALAR_TYPES.length; i++) {
+            if (SCALAR_TYPES[i] == c) {
+                return new ScalarCodec(i);
+            }
+        }
+        throw new IllegalArgumentException("Can't bind " + c);
+    }
+
+    private static Class<?> erase(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return erase(((ParameterizedType) type).getRawType());
+        } else if (type instanceof GenericArrayType) {
+            Type component = ((GenericArrayType) type).getGenericComponentType();
+            return Array.newInstance(erase(component), 0).getClass();
+        }
+        return Object.class;
+    }
+
+    //
+    // Give what a MethodHandle threw as an IOException, or throw it if
+    // it's unchecked.
+    //
+    private static IOException wrap(Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t instanceof IOException) {
+            return (IOException) t;
+        }
+        return new IOException(t);
+    }
+
+    //
+    // Reads and writes values of one type.
+    //
+    private static abstract class Codec {
+
+        //
+        // What JSON null reads as
+        //
+        Object nullValue = null;
+
+        //
+        // Read a value that isn't null
+        //
+        abstract Object read(JsonReader rdr) throws IOException;
+
+        //
+        // Write a value that isn't null
+        //
+        abstract void write(JsonWriter w, Object value) throws IOException;
+    }
+
+    //
+    // The scalar types, in the order of their codes in ScalarCodec.
+    //
+    private static final Class<?>[] SCALAR_TYPES = {
+        String.class, Boolean.class, boolean.class, Integer.class, int.class,
+        Long.class, long.class, Double.class, double.class, Float.class,
+        float.class, Short.class, short.class, Byte.class, byte.class,
+        Character.class, char.class, Number.class
+    };
+
+    private static final class ScalarCodec extends Codec {
+
+        private final Class<?> type;
+
+        ScalarCodec(int code) {
+            type = SCALAR_TYPES[code];
+            if (type == boolean.class) {
+                nullValue = Boolean.FALSE;
+            } else if (type == char.class) {
+                nullValue = Character.valueOf((char) 0);
+            } else if (type.isPrimitive()) {
+                nullValue = read(type, Integer.valueOf(0));
+            }
+        }
+
+        //
+        // Convert a number to a numeric type
+        //
+        private static Object read(Class<?> type, Number n) {
+            if (type == Integer.class || type == int.class) {
+                return n.intValue();
+            } else if (type == Long.class || type == long.class) {
+                return n.longValue();
+            } else if (type == Double.class || type == double.class) {
+                return n.doubleValue();
+            } else if (type == Float.class || type == float.class) {
+                return n.floatValue();
+            } else if (type == Short.class || type == short.class) {
+                return n.shortValue();
+            } else if (type == Byte.class || type == byte.class) {
+                return n.byteValue();
+            }
+            return n;
+        }
+
+        Object read(JsonReader rdr) throws IOException {
+            if (type == String.class) {
+                return rdr.nextString();
+            } else if (type == Boolean.class || type == boolean.class) {
+                return rdr.nextBoolean();
+            } else if (type == Character.class || type == char.class) {
+                String s = rdr.nextString();
+                if (s.length() != 1) {
+                    throw new IOException("Expected one character but was \""
+                                          + s + "\"");
+                }
+                return s.charAt(0);
+            }
+            Number n = rdr.nextNumber();
+            check(n);
+            return read(type, n);
+        }
+
+        //
+        // Make sure n fits our type without being rounded or wrapped.
+        // Floating point types take any number.
+        //
+        private void check(Number n) throws IOException {
+            long min;
+            long max;
+            if (type == Integer.class || type == int.class) {
+                min = Integer.MIN_VALUE;
+                max = Integer.MAX_VALUE;
+            } else if (type == Long.class || type == long.class) {
+                min = Long.MIN_VALUE;
+                max = Long.MAX_VALUE;
+            } else if (type == Short.class || type == short.class) {
+                min = Short.MIN_VALUE;
+                max = Short.MAX_VALUE;
+            } else if (type == Byte.class || type == byte.class) {
+                min = Byte.MIN_VALUE;
+                max = Byte.MAX_VALUE;
+            } else {
+                return;
+            }
+            if (n instanceof JsonNumber) {
+                n = ((JsonNumber) n).value();
+            }
+            long v;
+            if (n instanceof Double || n instanceof Float) {
+                double d = n.doubleValue();
+                if (d != Math.rint(d) || !(d >= -0x1p63 && d < 0x1p63)) {
+                    throw new IOException("Expected " + type.getName()
+                                          + " but was " + n);
+                }
+                v = (long) d;
+            } else {
+                v = n.longValue();
+            }
+            if (v < min || v > max) {
+                throw new IOException("Expected " + type.getName()
+                                      + " but was " + n);
+            }
+        }
+
+        void write(JsonWriter w, Object value) throws IOException {
+            if (value instanceof Character) {
+                w.write(value.toString());
+            } else {
+                w.write(value);
+            }
+        }
+    }
+
+    private static final class EnumCodec extends Codec {
+
+        private final Class type;
+
+        EnumCodec(Class<?> type) {
+            this.type = type;
+        }
+
+        Object read(JsonReader rdr) throws IOException {
+            String name = rdr.nextString();
+            try {
+                return Enum.valueOf(type, name);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("No " + type.getName() + " named " + name);
+            }
+        }
+
+        void write(JsonWriter w, Object value) throws IOException {
+            w.write(((Enum) value).name());
+        }
+    }
+
+    //
+    // Values declared as Object.  They're read as JsonIO.readJSON would,
+    // and written according to their runtime type.
+    //
+    private static final Codec DYNAMIC = new Codec() {
+
+        Object read(JsonReader rdr) throws IOException {
+            return rdr.readValue();
+        }
+
+        void write(JsonWriter w, Object value) throws IOException {
+            if (value == null) {
+                w.write(null);
+                return;
+            }
+            Class<?> c = value.getClass();
+            if (value instanceof Map) {
+                ANY_MAP.write(w, value);
+            } else if (value instanceof Collection) {
+                ANY_COLLECTION.write(w, value);
+            } else if (value instanceof Object[]) {
+                ANY_ARRAY.write(w, value);
+            } else if (value instanceof Number || value instanceof CharSequence
+                       || value instanceof Iterable
+                       || value instanceof Iterator
+                       || value instanceof BaseStream
+                       || value instanceof Supplier) {
+                //
+                // JsonWriter writes a CharSequence, like the JsonString
+                // slices JsonReader gives, as a string, and the lazy types
+                // as what they give, where they'd otherwise look like beans.
+                //
+                w.write(value);
+            } else if (c.isEnum() || c.isRecord() || value instanceof Character
+                       || isBean(c)) {
+                CODECS.get(c).write(w, value);
+            } else {
+                w.write(value);
+            }
+        }
+    };
+
+    //
+    // For writing containers of any type, whose contents are written
+    // according to their runtime types.
+    //
+    private static final Codec ANY_MAP
+            = new MapCodec(Map.class, Object.class, DYNAMIC);
+    private static final Codec ANY_COLLECTION
+            = new CollectionCodec(Collection.class, DYNAMIC);
+    private static final Codec ANY_ARRAY
+            = new ArrayCodec(Object.class, DYNAMIC);
+
+    //
+    // A record or bean class, looked up when it's used
+    //
+    private static final class ClassRef extends Codec {
+
+        private final Class<?> type;
+
+        ClassRef(Class<?> type) {
+            this.type = type;
+        }
+
+        Object read(JsonReader rdr) throws IOException {
+            return CODECS.get(type).read(rdr);
+        }
+
+        void write(JsonWriter w, Object value) throws IOException {
+            if (value.getClass() == type) {
+                CODECS.get(type).write(w, value);
+            } else {
+                DYNAMIC.write(w, value);
+            }
+        }
+    }
+
+    private static final class ArrayCodec extends Codec {
+
+        private final Class<?> component;
+        private final Codec codec;
+        private final MethodHandle setter;      // (Object, int, Object)void
+        private final MethodHandle getter;      // (Object, int)Object
+        private final MethodHandle length;      // (Object)int
+
+        ArrayCodec(Class<?> component, Codec codec) {
+            this.component = component;
+            this.codec = codec;
+            Class<?> type = Array.newInstance(component, 0).getClass();
+            setter = MethodHandles.arrayElementSetter(type).asType(
+                MethodType.methodType(void.class, Object.class, int.class,
+                                      Object.class));
+            getter = MethodHandles.arrayElementGetter(type).asType(
+                MethodType.methodType(Object.class, Object.class, int.class));
+            length = MethodHandles.arrayLength(type).asType(
+                MethodType.methodType(int.class, Object.class));
+        }
+
+        Object read(JsonReader rdr) throws IOException {
+            ArrayList elements = new ArrayList();
+            rdr.beginArray();
+            while (rdr.hasNext()) {
+                elements.add(readValue(rdr, codec));
+            }
+            rdr.endArray();
+            Object result = Array.newInstance(component, elements.size());
+            try {
+                for (int i = 0; i < elements.size(); i++) {
+                    setter.invokeExact(result, i, elements.get(i));
+                }
+            } catch (Throwable t) {
+                throw wrap(t);
+            }
+            return result;
+        }
+
+        void write(JsonWriter w, Object value) throws IOException {
+            try {
+                int n = (int) length.invokeExact(value);
+                w.writeRaw('[');
+                for (int i = 0; i < n; i++) {
+                    if (i > 0) {
+                        w.writeRaw(',');
+                    }
+                    writeValue(w, codec, (Object) getter.invokeExact(value, i));
+                }
+                w.writeRaw(']');
+            } catch (Throwable t) {
+                throw wrap(t);
+            }
+        }
+    }
+
+    private static final class CollectionCodec extends Codec {
+
+        private final boolean isSet;
+        private final Codec codec;
+
+        CollectionCodec(Class<?> type, Codec codec) {
+            if (type.isAssignableFrom(ArrayList.class)) {
+                isSet = false;
+            } else if (type.isAssignableFrom(LinkedHashSet.class)) {
+                isSet = true;
+            } else {
+                throw new IllegalArgumentException("Can't bind " + type);
+            }
+            this.codec = codec;
+        }
+
+        Object read(JsonReader rdr) throws IOException {
+            Collection result = isSet ? new LinkedHashSet() : new ArrayList();
+            rdr.beginArray();
+            while (rdr.hasNext()) {
+                result.add(readValue(rdr, codec));
+            }
+            rdr.endArray();
+            return result;
+        }
+
+        void write(JsonWriter w, Object value) throws IOException {
+            w.writeRaw('[');
+            boolean first = true;
+            for (Object element : (Collection) value) {
+                if (first) {
+                    first = false;
+                } else {
+                    w.writeRaw(',');
+                }
+                writeValue(w, codec, element);
+            }
+            w.writeRaw(']');
+        }
+    }
+
+    private static final class MapCodec extends Codec {
+
+        private final Class keyType;        // String, Object or an enum
+        private final Codec codec;
+
+        MapCodec(Class<?> type, Type keyType, Codec codec) {
+            if (!type.isAssignableFrom(HashMap.class)) {
+                throw new IllegalArgumentException("Can't bind " + type);
+            }
+            Class<?> k = erase(keyType);
+            if (k != String.class && k != Object.class && !k.isEnum()) {
+                throw new IllegalArgumentException("Can't bind key " + keyType);
+            }
+            this.keyType = k;
+            this.codec = codec;
+        }
+
+        Object read(JsonReader rdr) throws IOException {
+            HashMap result = new HashMap();
+            rdr.beginObject();
+            while (rdr.hasNext()) {
+                Object key;
+                if (keyType == Object.class) {
+                    key = rdr.nextKey();
+                } else if (keyType == String.class) {
+                    key = rdr.nextName();
+                } else {
+                    key = Enum.valueOf(keyType, rdr.nextName());
+                }
+                result.put(key, readValue(rdr, codec));
+            }
+            rdr.endObject();
+            return result;
+        }
+
+        void write(JsonWriter w, Object value) throws IOException {
+            w.writeRaw('{');
+            boolean first = true;
+            for (Map.Entry ent : ((Map<?, ?>) value).entrySet()) {
+                if (first) {
+                    first = false;
+                } else {
+                    w.writeRaw(',');
+                }
+                Object key = ent.getKey();
+                w.write(key instanceof Enum ? ((Enum) key).name() : key);
+                w.writeRaw(':');
+                writeValue(w, codec, ent.getValue());
+            }
+            w.writeRaw('}');
+        }
+    }
+
+    //
+    // A member of a record or bean
+    //
+    private static final class Property {
+        final String name;
+        final Type type;
+        final int index;                // For a record's constructor
+        Codec codec;
+        MethodHandle getter;            // (Object)Object
+        MethodHandle setter;            // (Object, Object)void, or null
+
+        Property(String name, Type type, int index) {
+            this.name = name;
+            this.type = type;
+            this.index = index;
+        }
+    }
+
+    private static final class ObjectCodec extends Codec {
+
+        private final Property[] properties;
+        private final HashMap<String, Property> byName
+                = new HashMap<String, Property>();
+        private final boolean isRecord;
+        private final MethodHandle create;  // (Object[])Object or ()Object
+        private final Object[] defaults;    // Of a record's components
+
+        ObjectCodec(Class<?> type) {
+            isRecord = type.isRecord();
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(
+                        type, MethodHandles.lookup());
+                if (isRecord) {
+                    RecordComponent[] rc = type.getRecordComponents();
+                    properties = new Property[rc.length];
+                    Class<?>[] types = new Class<?>[rc.length];
+                    defaults = new Object[rc.length];
+                    for (int i = 0; i < rc.length; i++) {
+                        Property p = new Property(rc[i].getName(),
+                                                  rc[i].getGenericType(), i);
+                        p.getter = lookup.unreflect(rc[i].getAccessor());
+                        properties[i] = p;
+                        types[i] = rc[i].getType();
+                    }
+                    create = lookup.unreflectConstructor(
+                                    type.getDeclaredConstructor(types))
+                            .asType(MethodType.genericMethodType(rc.length))
+                            .asSpreader(Object[].class, rc.length);
+                } else {
+                    ArrayList<Property> list = new ArrayList<Property>();
+                    HashSet<String> names = new HashSet<String>();
+                    for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                        MethodHandles.Lookup l = MethodHandles.privateLookupIn(
+                                c, MethodHandles.lookup());
+                        Field[] fields = c.getDeclaredFields();
+                        for (int i = 0; i < fields.length; i++) {
+                            Field f = fields[i];
+                            int mod = f.getModifiers();
+                            if (Modifier.isStatic(mod) || Modifier.isTransient(mod)
+                                    || f.isSynthetic()) {
+                                continue;
+                            } else if (!names.add(f.getName())) {
+                                continue;   // Hidden by a subclass field
+                            }
+                            Property p = new Property(f.getName(),
+                                                      f.getGenericType(), -1);
+                            p.getter = l.unreflectGetter(f);
+                            if (!Modifier.isFinal(mod)) {
+                                p.setter = l.unreflectSetter(f).asType(
+                                    MethodType.methodType(void.class,
+                                                Object.class, Object.class));
+                            }
+                            list.add(p);
+                        }
+                    }
+                    properties = list.toArray(new Property[list.size()]);
+                    defaults = null;
+                    create = lookup.findConstructor(type,
+                                    MethodType.methodType(void.class))
+                            .asType(MethodType.methodType(Object.class));
+                }
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalArgumentException("Can't bind " + type, ex);
+            } catch (SecurityException ex) {
+                throw new IllegalArgumentException("Can't bind " + type, ex);
+            }
+            for (int i = 0; i < properties.length; i++) {
+                Property p = properties[i];
+                p.getter = p.getter.asType(
+                        MethodType.methodType(Object.class, Object.class));
+                p.codec = forType(p.type);
+                if (defaults != null) {
+                    defaults[i] = p.codec.nullValue;
+                }
+                byName.put(p.name, p);
+            }
+        }
+
+        Object read(JsonReader rdr) throws IOException {
+            try {
+                if (isRecord) {
+                    Object[] args = defaults.clone();
+                    rdr.beginObject();
+                    while (rdr.hasNext()) {
+                        Property p = byName.get(rdr.nextName());
+                        if (p == null) {
+                            rdr.skipValue();
+                        } else {
+                            args[p.index] = readValue(rdr, p.codec);
+                        }
+                    }
+                    rdr.endObject();
+                    return (Object) create.invokeExact(args);
+                }
+                Object result = (Object) create.invokeExact();
+                rdr.beginObject();
+                while (rdr.hasNext()) {
+                    Property p = byName.get(rdr.nextName());
+                    if (p == null || p.setter == null) {
+                        rdr.skipValue();
+                    } else {
+                        p.setter.invokeExact(result, readValue(rdr, p.codec));
+                    }
+                }
+                rdr.endObject();
+                return result;
+            } catch (Throwable t) {
+                throw wrap(t);
+            }
+        }
+
+        void write(JsonWriter w, Object value) throws IOException {
+            try {
+                w.writeRaw('{');
+                for (int i = 0; i < properties.length; i++) {
+                    Property p = properties[i];
+                    if (i > 0) {
+                        w.writeRaw(',');
+                    }
+                    w.write(p.name);
+                    w.writeRaw(':');
+                    writeValue(w, p.codec, (Object) p.getter.invokeExact(value));
+                }
+                w.writeRaw('}');
+            } catch (Throwable t) {
+                throw wrap(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A navigator over a JSON document that's been indexed off the heap.
+ * The document is indexed in one pass into a tape in a direct buffer,
+ * as for JsonIO.readLazyJSON(buf, true); the cursor then moves around
+ * the tape, and only decodes the values it's asked for.  Moving makes no
+ * objects at all, so a big document mapped from a file can be walked
+ * with the heap staying flat.
+ * <p>
+ * The limits are those of the index.  The document must be in one
+ * ByteBuffer, so it can't be 2 GB or more; positions in it are ints.  The
+ * tape takes two ints per value, and can't hold more than 2^28 ints, or
+ * about 134 million values.  The tape is a direct buffer of up to 1 GB,
+ * which counts against -XX:MaxDirectMemorySize; it starts at about the
+ * size of the document, up to 64 MB, and doubles as it needs to, so for
+ * a while both the old and the new buffer are held.
+ * <p>
+ * The cursor is always on one value.  It starts on the whole document.
+ * down() moves to the first element of an array or the value of the
+ * first member of an object, next() to the one after it, and up() back
+ * to the array or object.  A typical use looks like this:
+ * <pre>
+ *      JsonCursor c = JsonCursor.of(mappedBuffer);
+ *      if (c.down("records") &amp;&amp; c.down()) {
+ *          do {
+ *              if (c.down("id")) {
+ *                  System.out.println(c.value());
+ *                  c.up();
+ *              }
+ *          } while (c.next());
+ *      }
+ * </pre>
+ * A move that isn't possible returns false and leaves the cursor where
+ * it was.  value() gives a scalar as readJSON would, and an object or
+ * array as a Map or List view over the same tape, that decodes on demand
+ * and keeps nothing.
+ * <p>
+ * The input must not be modified while the cursor or its views are in
+ * use.  Errors within strings and numbers are reported as an
+ * UncheckedIOException when they're decoded.  A JsonCursor is not
+ * thread-safe, but copy() gives another cursor over the same index, which
+ * can be used by another thread.
+ *
+ * @see JsonIO#readLazyJSON(ByteBuffer, boolean)
+ */
+public final class JsonCursor {
+
+    private final JsonIndex index;
+    private int node;                   // Tape index of the current value
+    private int[] parents;              // Enclosing containers' nodes
+    private int depth;
+
+    private JsonCursor(JsonIndex index, int node, int[] parents, int depth) {
+        this.index = index;
+        this.node = node;
+        this.parents = parents;
+        this.depth = depth;
+    }
+
+    /**
+     * Index the value that starts at buf's position, and give a cursor on
+     * it.  buf will be positioned one byte after the end of the value.
+     *
+     * @throws  IOException if there is a syntax error in the structure of
+     *                      the document.
+     **/
+    public static JsonCursor of(ByteBuffer buf) throws IOException {
+        return new JsonCursor(JsonIndex.index(buf, true), 0, new int[16], 0);
+    }
+
+    /**
+     * @see #of(ByteBuffer)
+     **/
+    public static JsonCursor of(byte[] buf) throws IOException {
+        return of(ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Give a cursor on the same value, that moves independently.
+     **/
+    public JsonCursor copy() {
+        return new JsonCursor(index, node, parents.clone(), depth);
+    }
+
+    /**
+     * Give the kind of the current value:  BEGIN_OBJECT, BEGIN_ARRAY,
+     * STRING, NUMBER, BOOLEAN or NULL.
+     **/
+    public JsonReader.Token token() {
+        switch (index.type(node)) {
+            case JsonIndex.OBJECT:
+                return JsonReader.Token.BEGIN_OBJECT;
+            case JsonIndex.ARRAY:
+                return JsonReader.Token.BEGIN_ARRAY;
+            case JsonIndex.STRING:
+                return JsonReader.Token.STRING;
+            case JsonIndex.NUMBER:
+                return JsonReader.Token.NUMBER;
+            case JsonIndex.NULL:
+                return JsonReader.Token.NULL;
+            default:
+                return JsonReader.Token.BOOLEAN;
+        }
+    }
+
+    /**
+     * Give how many objects and arrays the current value is in.
+     **/
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Decode the current value.  Objects and arrays are given as Map and
+     * List views.
+     **/
+    public Object value() {
+        return index.value(node);
+    }
+
+    /**
+     * Give the key of the current value, if it's a member of an object,
+     * or null.
+     **/
+    public Object key() {
+        if (depth == 0 || index.type(parents[depth - 1]) != JsonIndex.OBJECT) {
+            return null;
+        }
+        return index.value(node - 2);
+    }
+
+    /**
+     * Give the number of elements of the current array, or of members
+     * of the current object, counting duplicated keys each time.  A
+     * scalar has none.  This walks the container's children.
+     **/
+    public int size() {
+        int t = index.type(node);
+        if (t != JsonIndex.OBJECT && t != JsonIndex.ARRAY) {
+            return 0;
+        }
+        int end = index.end(node);
+        int step = (t == JsonIndex.OBJECT) ? 2 : 0;
+        int count = 0;
+        for (int i = node + 2 + step; i < end; i = index.after(i) + step) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Move to the first element of the current array, or the value of the
+     * first member of the current object.
+     **/
+    public boolean down() {
+        int t = index.type(node);
+        if ((t != JsonIndex.OBJECT && t != JsonIndex.ARRAY)
+                || index.end(node) == node + 2) {
+            return false;
+        }
+        push();
+        node += (t == JsonIndex.OBJECT) ? 4 : 2;
+        return true;
+    }
+
+    /**
+     * Move to the value of the member of the current object with the
+     * given key.  If the key is there more than once, the last is used.
+     * Keys that aren't strings, like the 7 in { 7 : "x" }, aren't matched.
+     **/
+    public boolean down(String key) {
+        if (index.type(node) != JsonIndex.OBJECT) {
+            return false;
+        }
+        int v = index.member(node, key);
+        if (v == -1) {
+            return false;
+        }
+        push();
+        node = v;
+        return true;
+    }
+
+    /**
+     * Move to the element of the current array with the given index.
+     * This walks the elements before it.
+     **/
+    public boolean down(int i) {
+        if (index.type(node) != JsonIndex.ARRAY || i < 0) {
+            return false;
+        }
+        int end = index.end(node);
+        int n = node + 2;
+        for (; i > 0 && n < end; i--) {
+            n = index.after(n);
+        }
+        if (n >= end) {
+            return false;
+        }
+        push();
+        node = n;
+        return true;
+    }
+
+    /**
+     * Move to the next element of the enclosing array, or the value of
+     * the next member of the enclosing object.
+     **/
+    public boolean next() {
+        if (depth == 0) {
+            return false;
+        }
+        int parent = parents[depth - 1];
+        int n = index.after(node);
+        if (n >= index.end(parent)) {
+            return false;
+        }
+        node = (index.type(parent) == JsonIndex.OBJECT) ? n + 2 : n;
+        return true;
+    }
+
+    /**
+     * Move to the enclosing array or object.
+     **/
+    public boolean up() {
+        if (depth == 0) {
+            return false;
+        }
+        node = parents[--depth];
+        return true;
+    }
+
+    private void push() {
+        if (depth == parents.length) {
+            parents = Arrays.copyOf(parents, depth * 2);
+        }
+        parents[depth++] = node;
+    }
+}
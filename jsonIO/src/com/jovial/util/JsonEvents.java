@@ -0,0 +1,105 @@
+package com.jovial.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JFR events for JsonMetrics.  They're kept out of JsonMetrics, so
+ * that jdk.jfr is only loaded once metrics are turned on.
+ *
+ * @see JsonMetrics
+ */
+final class JsonEvents {
+
+    @Name("com.jovial.util.JsonRead")
+    @Label("JSON Read")
+    @Category("JsonIO")
+    @Description("A JSON document read by JsonIO")
+    static final class ReadEvent extends Event {
+        @Label("Bytes") @DataAmount @Description("-1 if not known")
+        long bytes;
+        @Label("Values")
+        long values;
+        @Label("Strings")
+        long strings;
+        @Label("Numbers")
+        long numbers;
+        @Label("Escapes")
+        long escapes;
+        @Label("Maximum Depth")
+        int maxDepth;
+    }
+
+    @Name("com.jovial.util.JsonWrite")
+    @Label("JSON Write")
+    @Category("JsonIO")
+    @Description("A JSON document written by JsonIO")
+    static final class WriteEvent extends Event {
+        @Label("Bytes") @DataAmount @Description("Characters, for a Writer")
+        long bytes;
+        @Label("Values")
+        long values;
+        @Label("Strings")
+        long strings;
+        @Label("Numbers")
+        long numbers;
+        @Label("Escapes")
+        long escapes;
+        @Label("Maximum Depth")
+        int maxDepth;
+    }
+
+    //
+    // No instances
+    //
+    private JsonEvents() {
+    }
+
+    /**
+     * Start the event for a document, and return it, or return null if
+     * no recording wants it.
+     **/
+    static Object begin(boolean read) {
+        Event e = read ? new ReadEvent() : new WriteEvent();
+        if (!e.isEnabled()) {
+            return null;
+        }
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Finish the event in s, with the counts in s and the document's size.
+     **/
+    static void end(JsonStats s, long bytes) {
+        if (s.event instanceof ReadEvent) {
+            ReadEvent e = (ReadEvent) s.event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.bytes = bytes;
+                e.values = s.values;
+                e.strings = s.strings;
+                e.numbers = s.numbers;
+                e.escapes = s.escapes;
+                e.maxDepth = s.maxDepth;
+                e.commit();
+            }
+        } else {
+            WriteEvent e = (WriteEvent) s.event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.bytes = bytes;
+                e.values = s.values;
+                e.strings = s.strings;
+                e.numbers = s.numbers;
+                e.escapes = s.escapes;
+                e.maxDepth = s.maxDepth;
+                e.commit();
+            }
+        }
+    }
+}
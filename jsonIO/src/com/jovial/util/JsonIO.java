@@ -55,7 +55,14 @@
 package com.jovial.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 /**
  * This contains utility methods to read and write JSON-formatted objects.
@@ -77,12 +84,23 @@ import java.util.*;
  * For numbers, the reader will produce Integer, Long or Double; the
  * writer will accept Integer, Long, Float or Double.
  * <p>
- * For lists, the writer will accept Java arrays or any List type.
+ * For lists, the writer will accept Java arrays or any List type.  This
+ * includes int[], long[], float[] and double[], which JsonReader can
+ * produce for arrays of numbers.  Unless unknown types are being
+ * converted to strings, it also accepts an Iterable, Iterator or Stream,
+ * which is consumed as it's written, so an array of any length can be
+ * written without holding it in memory, and a Supplier, which is written
+ * as the value it supplies.  A Path is not taken as an Iterable.
  * <p>
  * Note that byte arrays are generally encoded an base64 and sent as
  * strings.  It's up to the user of this library to do the Base64
  * encoding/decoding, e.g. with java.util.Base64.
+ * <p>
+ * Documents too big to hold in memory can be read a token at a time
+ * with JsonReader.  Documents that are one big array can have their
+ * elements parsed in parallel, with readJSONParallel.
  *
+ * @see JsonReader
  * @author Bill Foote (http://jovial.com)
  */
 
@@ -100,6 +118,24 @@ public class JsonIO {
     //
     private static long LONG_MAX_MSD = 9000000000000000000L;
 
+    //
+    // Decimal exponents are clamped to this, so they can't overflow
+    //
+    static final int MAX_EXPONENT = 100000;
+
+    //
+    // A JsonReader and a JsonWriter for each thread, reset and reused by
+    // the entry points below, so that a service handling many small
+    // documents doesn't make new buffers and key caches for every one.
+    // An instance is taken out of its slot while it's in use, so a nested
+    // call on the same thread just makes a new one.
+    //
+    private static final ThreadLocal<JsonReader> READERS
+        = new ThreadLocal<JsonReader>();
+    private static final ThreadLocal<JsonWriter> WRITERS
+        = new ThreadLocal<JsonWriter>();
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
 
     public static String valueToString(Object value) throws IOException {
         StringWriter sw = new StringWriter();
@@ -153,80 +189,55 @@ public class JsonIO {
      *                      contains an invalid type.
      *
      * @see JsonIO
+     * @see JsonWriter
      **/
     public static void writeJSON(Writer out, Object value, 
                                  boolean convertToString) throws IOException {
-        if (value == null) {
-            out.write("null");
-        } else if (value instanceof Number) {
-            out.write(value.toString());
-        } else if (value instanceof Boolean) {
-            if (Boolean.TRUE.equals(value)) {
-                out.write("true");
-            } else {
-                out.write("false");
+        JsonWriter w = takeWriter();
+        try {
+            w.reset(out);
+            w.setConvertToString(convertToString);
+            JsonStats stats = JsonMetrics.begin(false);
+            w.setStats(stats);
+            long start = w.written();
+            w.write(value);
+            w.drain();
+            if (stats != null) {
+                JsonMetrics.endWrite(stats, w.written() - start);
             }
-        } else if (value instanceof List || value instanceof Object[]) {
-            Object[] arr = (value instanceof Object[]) ? ((Object[]) value) : ((List) value).toArray();
-            out.write('[');
-            for (int i = 0; i < arr.length; i++) {
-                if (i > 0) {
-                    out.write(',');
-                }
-                writeJSON(out, arr[i]);
-            }
-            out.write(']');
-        } else if (value instanceof Map) {
-            Map map = (Map) value;
-            out.write('{');
-            boolean first = true;
-            for (Iterator it = map.entrySet().iterator(); it.hasNext();) {
-                if (first) {
-                    first = false;
-                } else {
-                    out.write(',');
-                }
-                Map.Entry ent = (Map.Entry) it.next();
-                writeJSON(out, ent.getKey());
-                out.write(':');
-                writeJSON(out, ent.getValue());
-            }
-            out.write('}');
-        } else if (convertToString || value instanceof String) {
-            String s = value.toString();
-            out.write('"');
-            for (int i = 0; i < s.length(); i++) {
-                char c = s.charAt(i);
-                if (c == '"') {
-                    out.write('\\');
-                    out.write('"');
-                } else if (c == '\\') {
-                    out.write("\\\\");
-                } else if (c == '\b') {
-                    out.write("\\b");
-                } else if (c == '\f') {
-                    out.write("\\f");
-                } else if (c == '\n') {
-                    out.write("\\n");
-                } else if (c == '\r') {
-                    out.write("\\r");
-                } else if (c == '\t') {
-                    out.write("\\t");
-                } else if (c < 32 || c > 126) {
-                    out.write("\\u");
-                    String hex = Integer.toHexString(c);
-                    for (int j = hex.length(); j < 4; j++) {
-                        out.write('0');
-                    }
-                    out.write(hex);
-                } else {
-                    out.write(c);
-                }
+        } finally {
+            giveBack(w);
+        }
+    }
+
+    /**
+     * Write a JSON object to out as UTF-8, and do not convert unknown types
+     * to strings.  The bytes are encoded directly, without a java.io.Writer.
+     * The output is the same as writeJSON(Writer, Object).
+     *
+     * @param   out     The stream to write to.  It is not flushed.
+     *
+     * @throws  IOException if there is an underlying IO exception, or if value
+     *                      contains an invalid type.
+     *
+     * @see JsonWriter
+     **/
+    public static void writeJSON(OutputStream out, Object value) 
+            throws IOException 
+    {
+        JsonWriter w = takeWriter();
+        try {
+            w.reset(out);
+            JsonStats stats = JsonMetrics.begin(false);
+            w.setStats(stats);
+            long start = w.written();
+            w.write(value);
+            w.drain();
+            if (stats != null) {
+                JsonMetrics.endWrite(stats, w.written() - start);
             }
-            out.write('"');
-        } else {
-            throw new IOException("Invalid type " + value.getClass() + " for " 
-                                  + value);
+        } finally {
+            giveBack(w);
         }
     }
 
@@ -253,6 +264,97 @@ public class JsonIO {
         if (!rdr.markSupported()) {
             throw new IOException("Reader.markSupported must be true");
         }
+        JsonStats stats = JsonMetrics.begin(true);
+        Object result = readTree(rdr);
+        if (stats != null) {
+            stats.countTree(result);
+            JsonMetrics.endRead(stats, -1);
+        }
+        return result;
+    }
+
+    private static Object readTree(Reader rdr) throws IOException {
+        //
+        // Objects and arrays are kept on a stack of our own, rather than
+        // by recursion, so any depth of nesting can be read on any thread.
+        // open holds the containers we're in, innermost last.  For an
+        // object, keys holds the key of the member whose value we're
+        // reading, or NO_KEY if we're reading a key.
+        //
+        ArrayList<Object> open = null;
+        ArrayList<Object> keys = null;
+        for (;;) {
+            Object value = readValueStart(rdr);
+            if (value == OPEN_OBJECT) {
+                value = new HashMap();
+                if (nextMember(rdr)) {
+                    if (open == null) {
+                        open = new ArrayList<Object>();
+                        keys = new ArrayList<Object>();
+                    }
+                    open.add(value);
+                    keys.add(NO_KEY);
+                    continue;
+                }
+            } else if (value == OPEN_ARRAY) {
+                value = new ArrayList();
+                if (firstElement(rdr)) {
+                    if (open == null) {
+                        open = new ArrayList<Object>();
+                        keys = new ArrayList<Object>();
+                    }
+                    open.add(value);
+                    keys.add(null);
+                    continue;
+                }
+            }
+            //
+            // value is complete.  Add it to the container it's in, and
+            // complete the containers that end after it.
+            //
+            for (;;) {
+                int top = (open == null) ? -1 : open.size() - 1;
+                if (top < 0) {
+                    return value;
+                }
+                Object container = open.get(top);
+                if (container instanceof HashMap) {
+                    Object key = keys.get(top);
+                    if (key == NO_KEY) {
+                        keys.set(top, value);
+                        readColon(rdr);
+                        break;
+                    }
+                    ((HashMap) container).put(key, value);
+                    keys.set(top, NO_KEY);
+                    if (nextMember(rdr)) {
+                        break;
+                    }
+                } else {
+                    ((ArrayList) container).add(value);
+                    if (nextElement(rdr)) {
+                        break;
+                    }
+                }
+                open.remove(top);
+                keys.remove(top);
+                value = container;
+            }
+        }
+    }
+
+    //
+    // Markers for readValueStart(), and for the stack in readJSON
+    //
+    private static final Object OPEN_OBJECT = new Object();
+    private static final Object OPEN_ARRAY = new Object();
+    private static final Object NO_KEY = new Object();
+
+    //
+    // Read a scalar value, or the '{' or '[' that opens an object or
+    // array, in which case OPEN_OBJECT or OPEN_ARRAY is returned.
+    //
+    private static Object readValueStart(Reader rdr) throws IOException {
         for (;;) {
             int c = rdr.read();
             if (c == -1) {
@@ -264,9 +366,9 @@ public class JsonIO {
             }  else if (ch == '"' || ch == '\'') {
                 return readString(rdr, ch);
             } else if (ch == '{') {
-                return readHashMap(rdr);
+                return OPEN_OBJECT;
             } else if (ch == '[') {
-                return readArray(rdr);
+                return OPEN_ARRAY;
             }
             ch = Character.toLowerCase(ch);
             if (ch == 't') {
@@ -284,6 +386,325 @@ public class JsonIO {
         }
     }
 
+    /**
+     * Read a JSON object from UTF-8 encoded bytes.  This is faster than
+     * reading through a java.io.Reader, because bytes are only decoded
+     * into characters when a String is built.  The result is the same as
+     * readJSON(Reader).
+     *
+     * @throws  IOException if there is a syntax error.
+     *
+     * @see #readJSON(Reader)
+     **/
+    public static Object readJSON(byte[] buf) throws IOException {
+        return readJSON(buf, null);
+    }
+
+    /**
+     * Read a JSON object from UTF-8 encoded bytes, keeping only the
+     * members of objects that projection selects.  The rest are skipped
+     * without being parsed, which is much faster when only a few members
+     * are wanted.
+     *
+     * @param   projection  The members to keep, or null for all.
+     *
+     * @throws  IOException if there is a syntax error.
+     *
+     * @see JsonProjection
+     **/
+    public static Object readJSON(byte[] buf, JsonProjection projection)
+            throws IOException
+    {
+        JsonReader rdr = takeReader();
+        try {
+            rdr.reset(buf);
+            rdr.setProjection(projection);
+            JsonStats stats = JsonMetrics.begin(true);
+            rdr.setStats(stats);
+            Object result = rdr.readValue();
+            if (stats != null) {
+                JsonMetrics.endRead(stats, rdr.bufferPosition());
+            }
+            return result;
+        } finally {
+            giveBack(rdr);
+        }
+    }
+
+    /**
+     * Read a JSON object from the UTF-8 encoded bytes in buf, starting
+     * at its position.  buf will be positioned one byte after the last
+     * byte of the JSON value.  The result is the same as readJSON(Reader).
+     *
+     * @throws  IOException if there is a syntax error.
+     *
+     * @see #readJSON(Reader)
+     **/
+    public static Object readJSON(ByteBuffer buf) throws IOException {
+        JsonReader rdr = takeReader();
+        try {
+            rdr.reset(buf);
+            JsonStats stats = JsonMetrics.begin(true);
+            rdr.setStats(stats);
+            Object result = rdr.readValue();
+            if (stats != null) {
+                JsonMetrics.endRead(stats, rdr.bufferPosition() - buf.position());
+            }
+            buf.position(rdr.bufferPosition());
+            return result;
+        } finally {
+            giveBack(rdr);
+        }
+    }
+
+    /**
+     * Read a JSON object from a stream of UTF-8 encoded bytes.  The
+     * stream doesn't need to be buffered, and it doesn't need to support
+     * mark().  Bytes past the end of the JSON value may be consumed from
+     * in.  The result is the same as readJSON(Reader).
+     *
+     * @throws  IOException if there is an underlying IO exception, or a
+     *                      syntax error.
+     *
+     * @see #readJSON(Reader)
+     **/
+    public static Object readJSON(InputStream in) throws IOException {
+        return readJSON(in, null);
+    }
+
+    /**
+     * Read a JSON object from a stream of UTF-8 encoded bytes, keeping
+     * only the members of objects that projection selects.
+     *
+     * @param   projection  The members to keep, or null for all.
+     *
+     * @throws  IOException if there is an underlying IO exception, or a
+     *                      syntax error.
+     *
+     * @see #readJSON(byte[], JsonProjection)
+     * @see #readJSON(InputStream)
+     **/
+    public static Object readJSON(InputStream in, JsonProjection projection)
+            throws IOException
+    {
+        JsonReader rdr = takeReader();
+        try {
+            rdr.reset(in);
+            rdr.setProjection(projection);
+            JsonStats stats = JsonMetrics.begin(true);
+            rdr.setStats(stats);
+            Object result = rdr.readValue();
+            if (stats != null) {
+                JsonMetrics.endRead(stats, -1);
+            }
+            return result;
+        } finally {
+            giveBack(rdr);
+        }
+    }
+
+    //
+    // Take this thread's pooled reader, or make one.  Pooled readers
+    // share a key cache per thread.
+    //
+    private static JsonReader takeReader() {
+        JsonReader rdr = READERS.get();
+        if (rdr == null) {
+            rdr = new JsonReader(EMPTY);
+            rdr.setKeyCache(new JsonKeyCache());
+        } else {
+            READERS.set(null);
+        }
+        return rdr;
+    }
+
+    private static void giveBack(JsonReader rdr) {
+        rdr.reset(EMPTY);       // So the input isn't kept reachable
+        rdr.setStats(null);
+        rdr.setProjection(null);
+        READERS.set(rdr);
+    }
+
+    private static JsonWriter takeWriter() {
+        JsonWriter w = WRITERS.get();
+        if (w == null) {
+            return new JsonWriter(EMPTY);
+        }
+        WRITERS.set(null);
+        return w;
+    }
+
+    private static void giveBack(JsonWriter w) {
+        w.reset(EMPTY);
+        w.setStats(null);
+        w.setConvertToString(false);
+        WRITERS.set(w);
+    }
+
+    /**
+     * Read a JSON object from a file holding UTF-8.  The file is mapped
+     * into memory and parsed in place, which avoids a copy of the input
+     * on the heap.  Content after the JSON value is ignored.  The result
+     * is the same as readJSON(Reader).
+     *
+     * @throws  IOException if there is an underlying IO exception, or a
+     *                      syntax error.
+     *
+     * @see JsonReader#JsonReader(Path)
+     **/
+    public static Object readJSON(Path path) throws IOException {
+        JsonReader rdr = new JsonReader(path);
+        try {
+            JsonStats stats = JsonMetrics.begin(true);
+            rdr.setStats(stats);
+            Object result = rdr.readValue();
+            if (stats != null) {
+                JsonMetrics.endRead(stats, Files.size(path));
+            }
+            return result;
+        } finally {
+            rdr.close();
+        }
+    }
+
+    /**
+     * Read a JSON object from UTF-8 encoded bytes, lazily.  This makes one
+     * pass over the input to build a compact index of where each value
+     * is, and returns immutable Map and List views that only decode a
+     * value when it is accessed.  For documents where only a few values
+     * are used, this is much cheaper than readJSON.  The views compare
+     * equal to what readJSON would give.
+     * <p>
+     * buf must not be modified while the result is in use.  Syntax errors
+     * in the document's structure are reported here; errors within a
+     * number are reported as an UncheckedIOException when it's accessed.
+     *
+     * @throws  IOException if there is a syntax error.
+     *
+     * @see #readJSON(byte[])
+     **/
+    public static Object readLazyJSON(byte[] buf) throws IOException {
+        return JsonIndex.read(ByteBuffer.wrap(buf), false);
+    }
+
+    /**
+     * Read a JSON object from the UTF-8 encoded bytes in buf lazily,
+     * starting at its position.  buf will be positioned one byte after
+     * the last byte of the JSON value.
+     *
+     * @see #readLazyJSON(byte[])
+     **/
+    public static Object readLazyJSON(ByteBuffer buf) throws IOException {
+        return JsonIndex.read(buf, false);
+    }
+
+    /**
+     * Read a JSON object from the UTF-8 encoded bytes in buf lazily, with
+     * the index optionally kept off the heap.  If offHeap is true, the
+     * index is held in a direct buffer, and the Map and List views don't
+     * keep the values they decode; each access decodes from buf again.
+     * With buf a file mapped into memory, the heap used then doesn't grow
+     * with the size of the document, so even a large one puts little load
+     * on the garbage collector.  buf can't hold 2 GB or more, and the
+     * index can't hold more than about 134 million values.  The index
+     * starts with direct memory about the size of the document, up to
+     * 64 MB, and doubles as needed, up to 1 GB; this counts against the
+     * JVM's -XX:MaxDirectMemorySize.  Getting list elements in order is
+     * cheap, but each lookup in a map walks its members.
+     *
+     * @throws  IOException if there is a syntax error.
+     *
+     * @see #readLazyJSON(byte[])
+     * @see JsonCursor
+     **/
+    public static Object readLazyJSON(ByteBuffer buf, boolean offHeap)
+            throws IOException
+    {
+        return JsonIndex.read(buf, offHeap);
+    }
+
+    /**
+     * Read a JSON object from UTF-8 encoded bytes, using the threads of
+     * pool.  If the value is an array, the boundaries between its
+     * elements are found with a quick scan that only follows brackets,
+     * strings and comments, and the elements are parsed in parallel.
+     * Other values are read as usual.  The result is the same as
+     * readJSON(byte[]).
+     *
+     * @throws  IOException if there is a syntax error.
+     *
+     * @see #readJSON(byte[])
+     **/
+    public static Object readJSONParallel(byte[] buf, ForkJoinPool pool)
+            throws IOException
+    {
+        return readJSONParallel(ByteBuffer.wrap(buf), pool);
+    }
+
+    /**
+     * Read a JSON object from the UTF-8 encoded bytes in buf, starting
+     * at its position, using the threads of pool.  buf will be positioned
+     * one byte after the last byte of the JSON value.
+     *
+     * @see #readJSONParallel(byte[], ForkJoinPool)
+     **/
+    public static Object readJSONParallel(ByteBuffer buf, ForkJoinPool pool)
+            throws IOException
+    {
+        ParallelArrayReader rdr = new ParallelArrayReader(
+                new ByteSource.BufferSource(buf), pool.getParallelism());
+        ArrayList result = rdr.read(pool);
+        if (result == null) {
+            return readJSON(buf);
+        }
+        buf.position(buf.position() + (int) rdr.end());
+        return result;
+    }
+
+    /**
+     * Read a JSON object from a file holding UTF-8, using the threads of
+     * pool.  The file is mapped into memory in chunks, so it can be of
+     * any size.
+     *
+     * @see #readJSONParallel(byte[], ForkJoinPool)
+     **/
+    public static Object readJSONParallel(Path path, ForkJoinPool pool)
+            throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ParallelArrayReader rdr = new ParallelArrayReader(
+                    new ByteSource.FileSource(channel), pool.getParallelism());
+            ArrayList result = rdr.read(pool);
+            if (result != null) {
+                return result;
+            }
+        } finally {
+            channel.close();
+        }
+        return readJSON(path);
+    }
+
+    /**
+     * Give the elements of the JSON array in buf, from its position to its
+     * limit, as a parallel Stream.  The array is scanned to divide it into
+     * chunks before this returns, but elements are only parsed as the
+     * stream is consumed.  The elements are the same as readJSON would
+     * give.  buf's position is not changed, and it must not be modified
+     * while the stream is in use.
+     *
+     * @throws  IOException if the value isn't an array, or if its
+     *                      structure is broken.  Syntax errors within an
+     *                      element are thrown from the stream as
+     *                      UncheckedIOException.
+     **/
+    public static Stream<Object> streamArray(ByteBuffer buf)
+            throws IOException
+    {
+        return new ParallelArrayReader(new ByteSource.BufferSource(buf),
+                         ForkJoinPool.getCommonPoolParallelism()).stream();
+    }
+
     //
     // Skip whitespace, including comments.  Return true iff ch used.
     //
@@ -396,65 +817,79 @@ public class JsonIO {
         return (char) val;
     }
 
-    private static HashMap readHashMap(Reader rdr) throws IOException {
-        HashMap result = new HashMap();
+    //
+    // In an object, skip to the next member's key, past any commas.
+    // Return false if the object ends instead, consuming the '}'.
+    //
+    private static boolean nextMember(Reader rdr) throws IOException {
         for (;;) {
             rdr.mark(1);
             int ch = rdr.read();
             if (skipWhitespace(ch, rdr)) {
                 continue;
             } else if (ch == '}') {
-                return result;
+                return false;
             } else if (ch == ',') {
                 continue;
             } else {
                 rdr.reset();
-                Object key = readJSON(rdr);
-                for (;;) {
-                    ch = rdr.read();
-                    if (ch == ':') {
-                        break;
-                    } else if (skipWhitespace(ch, rdr)) {
-                        continue;
-                    } else {
-                        throwUnexpected(ch);
-                    }
-                }
-                Object value = readJSON(rdr);
-                result.put(key, value);
+                return true;
             }
         }
     }
 
-    private static ArrayList readArray(Reader rdr) throws IOException {
+    //
+    // Consume the ':' after an object member's key.
+    //
+    private static void readColon(Reader rdr) throws IOException {
+        for (;;) {
+            int ch = rdr.read();
+            if (ch == ':') {
+                return;
+            } else if (skipWhitespace(ch, rdr)) {
+                continue;
+            } else {
+                throwUnexpected(ch);
+            }
+        }
+    }
+
+    //
+    // Just after an array's '[', skip to its first element.  Return false
+    // if the array is empty, consuming the ']'.
+    //
+    private static boolean firstElement(Reader rdr) throws IOException {
         for (;;) {
             rdr.mark(1);
             int ch = rdr.read();
             if (ch == -1) {
                 throwUnexpected(ch);
             } else if (ch == ']') {
-                return new ArrayList();
+                return false;
             } else if (skipWhitespace(ch, rdr)) {
                 continue;
             } else {
                 rdr.reset();
-                break;
+                return true;
             }
         }
-        ArrayList result = new ArrayList();
+    }
+
+    //
+    // After an array element, consume the ',' and return true, or the
+    // ']' that ends the array and return false.
+    //
+    private static boolean nextElement(Reader rdr) throws IOException {
         for (;;) {
-            result.add(readJSON(rdr));
-            for (;;) {
-                int ch = rdr.read();
-                if (ch == ',') {
-                    break;
-                } else if (ch == ']') {
-                    return result;
-                } else if (skipWhitespace(ch, rdr)) {
-                    continue;
-                } else { 
-                    throwUnexpected(ch);
-                }
+            int ch = rdr.read();
+            if (ch == ',') {
+                return true;
+            } else if (ch == ']') {
+                return false;
+            } else if (skipWhitespace(ch, rdr)) {
+                continue;
+            } else { 
+                throwUnexpected(ch);
             }
         }
     }
@@ -492,11 +927,8 @@ public class JsonIO {
                 value -= (ch - '0');    // value is negative because -Integer.MIN_VALUE > Integer.MAX_VALUE
                 rdr.mark(1);
                 ch = rdr.read();
-            } else if (ch == '.') {
-                return readDouble(rdr, negative, value, true);
-            } else if (ch == 'e' || ch == 'E') {
-                double v = negative ? ((double) value) : (-((double) value));
-                return readScientific(rdr, v);
+            } else if (ch == '.' || ch == 'e' || ch == 'E') {
+                return readDouble(rdr, negative, value, ch);
             } else if (digitSeen) {
                 rdr.reset();
                 if (negative) {
@@ -529,23 +961,15 @@ public class JsonIO {
             rdr.mark(1);
             ch = rdr.read();
             if (ch >= '0' && ch <= '9') {
-                if (value < (Long.MIN_VALUE / 10)) {
-                    rdr.reset();
-                    return readDouble(rdr, negative, value, false);
-                }
-                value *= 10;
                 int digit = ch - '0';
-                if ((value + LONG_MAX_MSD) - digit < limit) {
-                    double v = value;
-                    v -= digit;
-                    return readDouble(rdr, negative, v, false);
+                if (value < (Long.MIN_VALUE / 10)
+                        || (value * 10 + LONG_MAX_MSD) - digit < limit) {
+                    return readDouble(rdr, negative, value, ch);
                 }
+                value *= 10;
                 value -= digit;
-            } else if (ch == '.') {
-                return readDouble(rdr, negative, value, true);
-            } else if (ch == 'e' || ch == 'E') {
-                double v = negative ? ((double) value) : (-((double) value));
-                return readScientific(rdr, v);
+            } else if (ch == '.' || ch == 'e' || ch == 'E') {
+                return readDouble(rdr, negative, value, ch);
             } else {
                 rdr.reset();
                 if (negative) {
@@ -566,67 +990,80 @@ public class JsonIO {
     }
 
     //
-    // Read a double
+    // Read a number that has to be a double.  value holds the digits read
+    // so far, and ch is the character after them, which has been consumed.
+    // It's a digit that didn't fit in value, '.', 'e' or 'E'.
     //
     // value is negative
     //
-    private static Number readDouble(Reader rdr, boolean negative, double value, 
-                                     boolean decimalSeen)
+    // The digits are collected into a significand and a decimal exponent,
+    // which DoubleParser turns into a correctly rounded double.  Digits that
+    // don't fit in the significand are only kept for the rare case where
+    // DoubleParser can't decide.
+    //
+    private static Number readDouble(Reader rdr, boolean negative, long value,
+                                     int ch)
         throws IOException
     {
-        while (!decimalSeen) {
-            rdr.mark(1);
-            int ch = rdr.read();
-            if (ch >= '0' && ch <= '9') {
-                value *= 10;
-                value -= ch - '0';      // value is negative
-            } else if (ch == '.') {
-                decimalSeen = true;
-            } else if (ch == 'e' || ch == 'E') {
-                if (!negative) {
-                    value = -value;
-                }
-                return readScientific(rdr, value);
+        long w = -value;        // Unsigned, so Long.MIN_VALUE is OK
+        int q = 0;
+        StringBuilder dropped = null;
+        boolean truncated = false;
+        while (ch >= '0' && ch <= '9') {
+            if (Long.compareUnsigned(w, DoubleParser.SIGNIFICAND_LIMIT) < 0) {
+                w = w * 10 + (ch - '0');
             } else {
-                rdr.reset();
-                if (negative) {
-                    return value;
-                } else {
-                    return -value;
-                }
+                q++;
+                dropped = drop(dropped, ch);
+                truncated |= ch != '0';
             }
+            rdr.mark(1);
+            ch = rdr.read();
         }
-        double multiplier = 1.0;
-        for (;;) {
+        if (ch == '.') {
             rdr.mark(1);
-            int ch = rdr.read();
-            if (ch >= '0' && ch <= '9') {
-                multiplier /= 10;
-                value -= multiplier * (ch - '0');       // value is negative
-            } else if (ch == 'e' || ch == 'E') {
-                if (!negative) {
-                    value = -value;
-                }
-                return readScientific(rdr, value);
-            } else {
-                rdr.reset();
-                if (negative) {
-                    return value;
+            ch = rdr.read();
+            while (ch >= '0' && ch <= '9') {
+                if (Long.compareUnsigned(w, DoubleParser.SIGNIFICAND_LIMIT) < 0) {
+                    w = w * 10 + (ch - '0');
+                    q--;
                 } else {
-                    return -value;
+                    dropped = drop(dropped, ch);
+                    truncated |= ch != '0';
                 }
+                rdr.mark(1);
+                ch = rdr.read();
+            }
+        }
+        if (ch == 'e' || ch == 'E') {
+            q += readExponent(rdr);
+        } else {
+            rdr.reset();
+        }
+        double d = DoubleParser.toDouble(negative, w, q, truncated);
+        if (Double.isNaN(d)) {
+            String digits = Long.toUnsignedString(w);
+            if (dropped != null) {
+                digits += dropped;
+                q -= dropped.length();
             }
+            d = Double.parseDouble((negative ? "-" : "") + digits + "E" + q);
         }
+        return d;
+    }
+
+    private static StringBuilder drop(StringBuilder dropped, int ch) {
+        if (dropped == null) {
+            dropped = new StringBuilder();
+        }
+        dropped.append((char) ch);
+        return dropped;
     }
 
     //
-    // Read a double after an 'e' or 'E' is seen
-    //
-    // value is the correct sign for the number being read
+    // Read the exponent of a double after an 'e' or 'E' is seen
     //
-    private static Number readScientific(Reader rdr, double value) 
-            throws IOException 
-    {
+    private static int readExponent(Reader rdr) throws IOException {
         boolean expNegative = false;
         int ch = rdr.read();
         if (ch == '+') {
@@ -639,26 +1076,20 @@ public class JsonIO {
             throwUnexpected(ch);
         }
         int exp = ch - '0';     
-            // We don't worry about exponent overflow, since the biggest
-            // exponent for a positive number is only 309.
         for (;;) {
             rdr.mark(1);
             ch = rdr.read();
             if (ch >= '0' && ch <= '9') {
-                exp *= 10;
-                exp += ch - '0';
+                // Anything this big gives zero or infinity anyway
+                exp = Math.min(exp * 10 + (ch - '0'), MAX_EXPONENT);
             } else {
                 rdr.reset();
-                if (expNegative) {
-                    return value / Math.pow(10.0, exp);
-                } else {
-                    return value * Math.pow(10.0, exp);
-                }
+                return expNegative ? -exp : exp;
             }
         }
     }
 
-    private static void throwUnexpected(int ch) throws IOException {
+    static void throwUnexpected(int ch) throws IOException {
         String str;
         if (ch == -1) {
             str = "EOF";
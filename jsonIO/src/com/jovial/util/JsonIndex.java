@@ -0,0 +1,647 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * A structural index over a JSON document held as UTF-8 bytes, with
+ * Map and List views that decode values only when they're accessed.
+ * Building the index is one pass over the input that records where each
+ * value starts, in a flat int array (the "tape").  No Strings, numbers,
+ * maps or lists are made until a caller asks for them.
+ * <p>
+ * Each value takes two ints on the tape.  The first holds the value's
+ * type in the low three bits; for objects and arrays, the rest holds the
+ * tape index just past the container's last descendant, so a container
+ * can be stepped over in one move.  The second int is the byte offset of
+ * the value's first character.  An object's members are a key followed by
+ * a value.
+ * <p>
+ * The tape can be kept off the heap, in a direct buffer.  Then the Map
+ * and List views don't keep what they decode, either; each access
+ * decodes from the input again.  With the input in a mapped file, heap
+ * use then stays flat however big the document is, and the garbage
+ * collector has nothing big to trace.  The document must still be in one
+ * ByteBuffer, under 2 GB, and the tape can't be more than MAX_TAPE ints.
+ *
+ * @see JsonIO#readLazyJSON(ByteBuffer)
+ * @see JsonCursor
+ */
+@SuppressWarnings("unchecked")
+final class JsonIndex {
+
+    static final int OBJECT = 0;
+    static final int ARRAY = 1;
+    static final int STRING = 2;
+    static final int NUMBER = 3;
+    static final int TRUE = 4;
+    static final int FALSE = 5;
+    static final int NULL = 6;
+
+    //
+    // Containers record their end index in the bits above the type, so
+    // this is the biggest tape we can handle.
+    //
+    private static final int MAX_TAPE = Integer.MAX_VALUE >>> 3;
+
+    //
+    // The most ints an off-heap tape starts with
+    //
+    private static final int MAX_OFF_HEAP_START = 1 << 24;
+
+    private final ByteBuffer buf;
+    private final Utf8Lexer lexer;
+    private final boolean offHeap;
+    private IntBuffer tape;
+    private int tapeLen = 0;
+
+    private JsonIndex(ByteBuffer buf, boolean offHeap) {
+        this.buf = buf;
+        this.lexer = new Utf8Lexer(buf);
+        this.offHeap = offHeap;
+        //
+        // Off the heap, growing is costly, so start near what a typical
+        // document needs, but not with more than 64 MB.
+        //
+        int size = 64;
+        if (offHeap) {
+            size = Math.min(MAX_OFF_HEAP_START,
+                            Math.max(size, buf.remaining() / 4));
+        }
+        this.tape = allocate(size);
+    }
+
+    /**
+     * Index the value that starts at buf's position, and return it.
+     * Objects and arrays are returned as lazy Map and List views; scalars
+     * are decoded right away.  On return, buf is positioned one byte
+     * after the end of the value.  The contents of buf must not be
+     * changed while the views are in use.
+     *
+     * @param   offHeap     If true, the tape is kept in a direct buffer,
+     *                      and the views don't keep decoded values.
+     **/
+    static Object read(ByteBuffer buf, boolean offHeap) throws IOException {
+        return index(buf, offHeap).value(0);
+    }
+
+    /**
+     * Index the value that starts at buf's position.  The value is at
+     * tape index 0.
+     *
+     * @see #read(ByteBuffer, boolean)
+     **/
+    static JsonIndex index(ByteBuffer buf, boolean offHeap)
+            throws IOException
+    {
+        JsonIndex index = new JsonIndex(buf, offHeap);
+        index.build();
+        buf.position(index.lexer.position());
+        return index;
+    }
+
+    private IntBuffer allocate(int ints) {
+        if (offHeap) {
+            return ByteBuffer.allocateDirect(ints * 4)
+                             .order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return IntBuffer.allocate(ints);
+    }
+
+    //
+    // Build the tape.  This walks the grammar with an explicit stack of
+    // open containers, so deep nesting doesn't use up the thread's stack.
+    //
+    private void build() throws IOException {
+        int[] open = new int[32];
+        int sp = 0;
+        int c = lexer.next();
+        for (;;) {
+            //
+            // c is the first character of a value
+            //
+            int node = add(c);
+            if (type(node) == OBJECT || type(node) == ARRAY) {
+                if (sp == open.length) {
+                    open = Arrays.copyOf(open, sp * 2);
+                }
+                open[sp++] = node;
+                c = lexer.next();
+                if (type(node) == OBJECT) {
+                    while (c == ',') {
+                        c = lexer.next();
+                    }
+                    if (c != '}') {
+                        c = key(c);
+                        continue;
+                    }
+                } else if (c != ']') {
+                    continue;
+                }
+                close(open[--sp]);
+            }
+            //
+            // A value is done.  Look for the next one in the enclosing
+            // container, closing containers as we go.
+            //
+            for (;;) {
+                if (sp == 0) {
+                    return;
+                }
+                int top = open[sp - 1];
+                c = lexer.next();
+                if (type(top) == ARRAY) {
+                    if (c == ',') {
+                        c = lexer.next();
+                        break;
+                    } else if (c != ']') {
+                        JsonIO.throwUnexpected(c);
+                    }
+                } else {
+                    while (c == ',') {
+                        c = lexer.next();
+                    }
+                    if (c != '}') {
+                        c = key(c);
+                        break;
+                    }
+                }
+                close(open[--sp]);
+            }
+        }
+    }
+
+    //
+    // Add an object key whose first character is c.  Consume the ':' after
+    // it, and return the first character of the value.
+    //
+    private int key(int c) throws IOException {
+        if (c == '{' || c == '[') {
+            JsonIO.throwUnexpected(c);
+        }
+        add(c);
+        c = lexer.next();
+        if (c != ':') {
+            JsonIO.throwUnexpected(c);
+        }
+        return lexer.next();
+    }
+
+    //
+    // Add a node for the value whose first character is c, and consume
+    // it unless it's a container.  Return the node's tape index.
+    //
+    private int add(int c) throws IOException {
+        int start = lexer.position() - 1;
+        int type;
+        if (c == '{') {
+            type = OBJECT;
+        } else if (c == '[') {
+            type = ARRAY;
+        } else if (c == '"' || c == '\'') {
+            type = STRING;
+            lexer.skipString(c);
+        } else if (c == -1) {
+            JsonIO.throwUnexpected(c);
+            return 0;
+        } else {
+            char ch = Character.toLowerCase((char) c);
+            if (ch == 't') {
+                type = TRUE;
+                lexer.readConstant("rue");
+            } else if (ch == 'f') {
+                type = FALSE;
+                lexer.readConstant("alse");
+            } else if (ch == 'n') {
+                type = NULL;
+                lexer.readConstant("ull");
+            } else {
+                type = NUMBER;
+                lexer.scanNumber(c);
+            }
+        }
+        int node = tapeLen;
+        if (node + 2 > tape.capacity()) {
+            if (tape.capacity() >= MAX_TAPE) {
+                throw new IOException("Document too large to index");
+            }
+            IntBuffer t = allocate(Math.min(tape.capacity() * 2, MAX_TAPE));
+            tape.limit(tapeLen);
+            t.put(tape);
+            t.clear();
+            tape = t;
+        }
+        tape.put(node, type);
+        tape.put(node + 1, start);
+        tapeLen = node + 2;
+        return node;
+    }
+
+    private void close(int node) {
+        tape.put(node, tape.get(node) | tapeLen << 3);
+    }
+
+    int type(int node) {
+        return tape.get(node) & 7;
+    }
+
+    //
+    // Give the tape index just after node and everything in it
+    //
+    int after(int node) {
+        int t = tape.get(node) & 7;
+        if (t == OBJECT || t == ARRAY) {
+            return tape.get(node) >>> 3;
+        }
+        return node + 2;
+    }
+
+    //
+    // Give the tape index just after the last thing in a container
+    //
+    int end(int node) {
+        return tape.get(node) >>> 3;
+    }
+
+    //
+    // Give the tape index of the value of the member of object with the
+    // given key, or -1.  Like a HashMap, the last of any duplicated keys
+    // wins.
+    //
+    int member(int object, Object key) {
+        int end = end(object);
+        int found = -1;
+        for (int i = object + 2; i < end; i = after(i + 2)) {
+            if (key instanceof String ? keyEquals(i, (String) key)
+                                      : Objects.equals(key, value(i))) {
+                found = i + 2;
+            }
+        }
+        return found;
+    }
+
+    //
+    // Give the tape indices of the values directly contained in node.
+    // For an object, that's the keys.
+    //
+    private int[] children(int node, boolean keysOnly) {
+        int end = end(node);
+        int count = 0;
+        int[] result = new int[8];
+        for (int i = node + 2; i < end; ) {
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = i;
+            i = after(i);
+            if (keysOnly) {
+                i = after(i);
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    //
+    // Decode the value at node.  The lexer is shared, so this is
+    // synchronized.
+    //
+    synchronized Object value(int node) {
+        int off = tape.get(node + 1);
+        try {
+            switch (tape.get(node) & 7) {
+                case OBJECT:
+                    return offHeap ? new TapeMap(this, node)
+                                   : new LazyMap(this, node);
+                case ARRAY:
+                    return offHeap ? new TapeList(this, node)
+                                   : new LazyList(this, node);
+                case STRING:
+                    lexer.seek(off + 1);
+                    return lexer.readString(buf.get(off));
+                case NUMBER:
+                    lexer.seek(off + 1);
+                    return lexer.readNumber(buf.get(off));
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                default:
+                    return null;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    //
+    // Is the key at node equal to the string s?  This compares against
+    // the bytes of the input, so that keys that don't match are never
+    // decoded.
+    //
+    private boolean keyEquals(int node, String s) {
+        if ((tape.get(node) & 7) != STRING) {
+            return false;
+        }
+        int off = tape.get(node + 1);
+        int delimiter = buf.get(off++);
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            int b = buf.get(off + i);
+            if (b == '\\' || b < 0) {
+                return s.equals(value(node));   // Needs decoding
+            } else if (b == delimiter || b != s.charAt(i)) {
+                return false;
+            }
+        }
+        return buf.get(off + len) == delimiter;
+    }
+
+    //
+    // An immutable view of an indexed JSON object.  Like the list view,
+    // it may be read by several threads at once.
+    //
+    private static class LazyMap extends AbstractMap {
+
+        private final JsonIndex index;
+        private final int node;
+        private int[] keys;             // Tape index of each key
+        private Object[] values;        // Values that have been decoded
+        private HashMap keyToMember;    // Made when we need to iterate
+
+        LazyMap(JsonIndex index, int node) {
+            this.index = index;
+            this.node = node;
+        }
+
+        private synchronized int[] keys() {
+            if (keys == null) {
+                keys = index.children(node, true);
+                values = new Object[keys.length];
+            }
+            return keys;
+        }
+
+        //
+        // Give the position in keys of the member with the given key, or
+        // -1.  Like a HashMap, the last of any duplicated keys wins.
+        //
+        private int find(Object key) {
+            int[] k = keys();
+            if (key instanceof String) {
+                String s = (String) key;
+                for (int i = k.length - 1; i >= 0; i--) {
+                    if (index.keyEquals(k[i], s)) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            Integer i = (Integer) members().get(key);
+            return i == null ? -1 : i.intValue();
+        }
+
+        private synchronized Object valueAt(int i) {
+            Object v = values[i];
+            if (v == null) {
+                v = values[i] = index.value(keys[i] + 2);
+            }
+            return v;
+        }
+
+        //
+        // A map from decoded key to position in keys, for iteration
+        //
+        private synchronized HashMap members() {
+            if (keyToMember == null) {
+                int[] k = keys();
+                HashMap m = new HashMap();
+                for (int i = 0; i < k.length; i++) {
+                    m.put(index.value(k[i]), i);
+                }
+                keyToMember = m;
+            }
+            return keyToMember;
+        }
+
+        public Object get(Object key) {
+            int i = find(key);
+            return i == -1 ? null : valueAt(i);
+        }
+
+        public boolean containsKey(Object key) {
+            return find(key) != -1;
+        }
+
+        public int size() {
+            return members().size();
+        }
+
+        public Set entrySet() {
+            final HashMap m = members();
+            return new AbstractSet() {
+                public int size() {
+                    return m.size();
+                }
+
+                public Iterator iterator() {
+                    final Iterator it = m.entrySet().iterator();
+                    return new Iterator() {
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        public Object next() {
+                            Map.Entry e = (Map.Entry) it.next();
+                            int i = ((Integer) e.getValue()).intValue();
+                            return new SimpleImmutableEntry(e.getKey(),
+                                                            valueAt(i));
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    //
+    // An immutable view of an indexed JSON array
+    //
+    private static class LazyList extends AbstractList implements RandomAccess {
+
+        private final JsonIndex index;
+        private final int node;
+        private int[] elements;         // Tape index of each element
+        private Object[] values;        // Values that have been decoded
+
+        LazyList(JsonIndex index, int node) {
+            this.index = index;
+            this.node = node;
+        }
+
+        private synchronized int[] elements() {
+            if (elements == null) {
+                elements = index.children(node, false);
+                values = new Object[elements.length];
+            }
+            return elements;
+        }
+
+        public synchronized Object get(int i) {
+            int[] e = elements();
+            if (i < 0 || i >= e.length) {
+                throw new IndexOutOfBoundsException("" + i);
+            }
+            Object v = values[i];
+            if (v == null) {
+                v = values[i] = index.value(e[i]);
+            }
+            return v;
+        }
+
+        public int size() {
+            return elements().length;
+        }
+    }
+
+    //
+    // A view of an indexed JSON object that keeps nothing it decodes, for
+    // a tape that's off the heap.  Keys are found by walking the members
+    // and comparing against the input.
+    //
+    private static class TapeMap extends AbstractMap {
+
+        private final JsonIndex index;
+        private final int node;
+        private int size = -1;          // Distinct keys, once counted
+        private boolean duplicates;
+
+        TapeMap(JsonIndex index, int node) {
+            this.index = index;
+            this.node = node;
+        }
+
+        public Object get(Object key) {
+            int v = index.member(node, key);
+            return v == -1 ? null : index.value(v);
+        }
+
+        public boolean containsKey(Object key) {
+            return index.member(node, key) != -1;
+        }
+
+        //
+        // Count the distinct keys.  The set is thrown away; all we keep is
+        // whether there were duplicates, which is rare.
+        //
+        public synchronized int size() {
+            if (size == -1) {
+                HashSet seen = new HashSet();
+                int count = 0;
+                int end = index.end(node);
+                for (int i = node + 2; i < end; i = index.after(i + 2)) {
+                    seen.add(index.value(i));
+                    count++;
+                }
+                size = seen.size();
+                duplicates = size < count;
+            }
+            return size;
+        }
+
+        public Set entrySet() {
+            final boolean skip;
+            synchronized (this) {
+                size();
+                skip = duplicates;
+            }
+            return new AbstractSet() {
+                public int size() {
+                    return TapeMap.this.size();
+                }
+
+                public Iterator iterator() {
+                    return new Iterator() {
+                        private final int end = index.end(node);
+                        private int key = advance(node + 2);
+
+                        //
+                        // Give the first key at or after i that isn't
+                        // repeated later in the object
+                        //
+                        private int advance(int i) {
+                            while (skip && i < end
+                                   && index.member(node, index.value(i))
+                                        != i + 2) {
+                                i = index.after(i + 2);
+                            }
+                            return i;
+                        }
+
+                        public boolean hasNext() {
+                            return key < end;
+                        }
+
+                        public Object next() {
+                            if (key >= end) {
+                                throw new NoSuchElementException();
+                            }
+                            int k = key;
+                            key = advance(index.after(k + 2));
+                            return new SimpleImmutableEntry(index.value(k),
+                                                    index.value(k + 2));
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    //
+    // A view of an indexed JSON array that keeps nothing it decodes.  It
+    // remembers where the last element it gave was, so walking the list
+    // in order is cheap; jumping about means walking the tape.
+    //
+    private static class TapeList extends AbstractList {
+
+        private final JsonIndex index;
+        private final int node;
+        private int size = -1;
+        private int hintIndex;          // Element number of hintNode
+        private int hintNode;
+
+        TapeList(JsonIndex index, int node) {
+            this.index = index;
+            this.node = node;
+            this.hintNode = node + 2;
+        }
+
+        public synchronized Object get(int i) {
+            if (i < 0 || i >= size()) {
+                throw new IndexOutOfBoundsException("" + i);
+            }
+            if (i < hintIndex) {
+                hintIndex = 0;
+                hintNode = node + 2;
+            }
+            while (hintIndex < i) {
+                hintNode = index.after(hintNode);
+                hintIndex++;
+            }
+            return index.value(hintNode);
+        }
+
+        public synchronized int size() {
+            if (size == -1) {
+                int end = index.end(node);
+                int count = 0;
+                for (int i = node + 2; i < end; i = index.after(i)) {
+                    count++;
+                }
+                size = count;
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.jovial.util;
+
+/**
+ * A bounded cache of object keys, for JsonReader.  Documents that are
+ * arrays of records repeat the same few keys over and over; with a
+ * cache, each repeat of a key gives the same String instance, and no new
+ * String is allocated when the key is found.  That cuts the allocation
+ * rate while parsing, and the heap used by the maps that are kept.
+ * <p>
+ * The cache is a direct-mapped table:  each key has exactly one slot it
+ * can go in, chosen by its hash code, and a new key replaces whatever was
+ * in its slot.  The cache can therefore never grow beyond its size, no
+ * matter what the input holds.  Long keys aren't cached at all.
+ * <p>
+ * A cache can be shared by several JsonReaders, including readers on
+ * different threads.  Races between threads can only cause a cache miss.
+ *
+ * @see JsonReader#setKeyCache(JsonKeyCache)
+ */
+public final class JsonKeyCache {
+
+    //
+    // Keys longer than this aren't cached
+    //
+    private static final int MAX_KEY_LENGTH = 64;
+
+    private final String[] table;
+    private final int mask;
+
+    /**
+     * Create a cache with room for 1024 keys.
+     **/
+    public JsonKeyCache() {
+        this(1024);
+    }
+
+    /**
+     * Create a cache that holds at most size keys.  size is rounded up to
+     * a power of two.
+     **/
+    public JsonKeyCache(int size) {
+        if (size < 1 || size > (1 << 30)) {
+            throw new IllegalArgumentException("Bad cache size " + size);
+        }
+        int n = Integer.highestOneBit(size);
+        if (n < size) {
+            n *= 2;
+        }
+        table = new String[n];
+        mask = n - 1;
+    }
+
+    /**
+     * Give the String for the characters buf[off..off+len), from the cache
+     * if it's there.
+     **/
+    String get(char[] buf, int off, int len) {
+        if (len > MAX_KEY_LENGTH) {
+            return new String(buf, off, len);
+        }
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + buf[off + i];
+        }
+        int slot = (h ^ (h >>> 16)) & mask;
+        String s = table[slot];
+        if (s != null && s.hashCode() == h && s.length() == len) {
+            int i = 0;
+            while (i < len && s.charAt(i) == buf[off + i]) {
+                i++;
+            }
+            if (i == len) {
+                return s;
+            }
+        }
+        s = new String(buf, off, len);
+        table[slot] = s;
+        return s;
+    }
+
+    /**
+     * Give the canonical instance of s, adding it to the cache if
+     * it's not there.
+     **/
+    String get(String s) {
+        if (s.length() > MAX_KEY_LENGTH) {
+            return s;
+        }
+        int h = s.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        String cached = table[slot];
+        if (s.equals(cached)) {
+            return cached;
+        }
+        table[slot] = s;
+        return s;
+    }
+
+    /**
+     * Remove all keys from the cache.
+     **/
+    public void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = null;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.jovial.util;
+
+import java.io.*;
+
+/**
+ * The lexical layer underneath JsonReader.  A lexer hands out the
+ * significant characters of a JSON stream one at a time, with whitespace
+ * and comments removed, and knows how to read the bodies of strings,
+ * numbers and constants.  There is a subclass for each kind of input;
+ * JsonReader implements the grammar on top of that.
+ * <p>
+ * The grammar accepted is the same as JsonIO.readJSON(Reader).
+ *
+ * @see JsonReader
+ */
+abstract class JsonLexer implements Closeable {
+
+    //
+    // Scratch space for the characters of a number
+    //
+    protected char[] numBuf = new char[32];
+    protected int numLen;
+
+    //
+    // Scratch space for strings that need more than a simple copy
+    //
+    protected StringBuilder strBuf = new StringBuilder();
+
+    //
+    // Counts for JsonMetrics, or null
+    //
+    JsonStats stats;
+
+    /**
+     * Return the next significant character, after skipping whitespace
+     * and comments, or -1 on EOF.  The character is consumed.
+     **/
+    abstract int next() throws IOException;
+
+    /**
+     * Read the body of a string whose opening delimiter has been consumed.
+     * The closing delimiter is consumed.
+     **/
+    abstract String readString(int delimiter) throws IOException;
+
+    /**
+     * Like readString, but for an object key.  The result is taken from
+     * cache when it's there, so that repeated keys share one String.
+     **/
+    abstract String readKey(int delimiter, JsonKeyCache cache)
+            throws IOException;
+
+    /**
+     * Like readString, but the result may be a JsonString that's a view
+     * of the input, if the lexer supports that and the string allows it.
+     **/
+    CharSequence readSlice(int delimiter) throws IOException {
+        return readString(delimiter);
+    }
+
+    /**
+     * Like readString, but discard the result.
+     **/
+    abstract void skipString(int delimiter) throws IOException;
+
+    /**
+     * Skip the rest of an object or array whose opening character has
+     * been consumed, up to and including the character that closes it.
+     * Only the nesting, strings and comments are followed, so this is much
+     * faster than reading the tokens.  Syntax errors inside, like a
+     * missing colon or a mismatched bracket, aren't detected.
+     **/
+    abstract void skipNested() throws IOException;
+
+    /**
+     * Read the rest of a constant like true, false or null.  The first
+     * character has been consumed.
+     **/
+    abstract void readConstant(String wanted) throws IOException;
+
+    /**
+     * Put the characters of a number into numBuf/numLen.  The first
+     * character of the number has been consumed, and is given as initial.
+     * The number ends where the grammar says it does, as in
+     * JsonIO.readJSON(Reader), and the character after it is not consumed.
+     *
+     * @throws  IOException if the number stops before it's complete, like
+     *                      "-" or "1e".
+     **/
+    abstract void scanNumber(int initial) throws IOException;
+
+    /**
+     * Consume the rest of a number whose first character, initial, has
+     * been consumed, without converting it.  It ends in the same place as
+     * for scanNumber(), but as with skipNested(), a number that stops too
+     * soon, like "1e", isn't detected.
+     **/
+    abstract void skipNumber(int initial) throws IOException;
+
+    //
+    // The states of a number being scanned.  The grammar is that of
+    // JsonIO.readJSON(Reader):  an optional '-', then digits, then '.'
+    // and more digits, then an exponent, where any of those three parts
+    // may be left out as long as one of them is there.  So ".5", "5." and
+    // even "e3" (which is 0.0) are numbers.
+    //
+    static final int NUM_END = -1;          // Not part of the number
+    static final int NUM_SIGN = 0;          // After a leading '-'
+    static final int NUM_INT = 1;
+    static final int NUM_FRACTION = 2;      // After the '.'
+    static final int NUM_EXP = 3;           // After the 'e'
+    static final int NUM_EXP_SIGN = 4;
+    static final int NUM_EXP_DIGITS = 5;
+
+    //
+    // Give the state after the first character of a number
+    //
+    static int numberStart(int initial) throws IOException {
+        if (initial == '-') {
+            return NUM_SIGN;
+        }
+        int state = numberNext(NUM_SIGN, initial);
+        if (state == NUM_END) {
+            JsonIO.throwUnexpected(initial);
+        }
+        return state;
+    }
+
+    //
+    // Give the state after ch, or NUM_END if ch isn't part of the number
+    //
+    static int numberNext(int state, int ch) {
+        boolean digit = ch >= '0' && ch <= '9';
+        switch (state) {
+            case NUM_SIGN:
+            case NUM_INT:
+                if (digit) {
+                    return NUM_INT;
+                } else if (ch == '.') {
+                    return NUM_FRACTION;
+                }
+                return (ch == 'e' || ch == 'E') ? NUM_EXP : NUM_END;
+            case NUM_FRACTION:
+                if (digit) {
+                    return NUM_FRACTION;
+                }
+                return (ch == 'e' || ch == 'E') ? NUM_EXP : NUM_END;
+            case NUM_EXP:
+                if (ch == '+' || ch == '-') {
+                    return NUM_EXP_SIGN;
+                }
+                return digit ? NUM_EXP_DIGITS : NUM_END;
+            default:    // NUM_EXP_SIGN, NUM_EXP_DIGITS
+                return digit ? NUM_EXP_DIGITS : NUM_END;
+        }
+    }
+
+    //
+    // Check that a number can end in state, where ch (or -1 for EOF) is
+    // the character after it.
+    //
+    static void numberEnd(int state, int ch) throws IOException {
+        if (state == NUM_SIGN || state == NUM_EXP || state == NUM_EXP_SIGN) {
+            JsonIO.throwUnexpected(ch);
+        }
+    }
+
+    public abstract void close() throws IOException;
+
+    //
+    // Drop scratch space that has grown big, so that a lexer that's kept
+    // for reuse doesn't hang on to it.
+    //
+    protected void trimScratch() {
+        if (numBuf.length > 1024) {
+            numBuf = new char[32];
+        }
+        if (strBuf.capacity() > 65536) {
+            strBuf = new StringBuilder();
+        }
+    }
+
+    /**
+     * Read a number whose first character has been consumed.
+     **/
+    Number readNumber(int initial) throws IOException {
+        scanNumber(initial);
+        return parseNumber(numBuf, numLen);
+    }
+
+    /**
+     * Read a number whose first character has been consumed, as a
+     * JsonNumber that keeps its text.  The syntax is checked, but the
+     * number isn't converted.
+     **/
+    JsonNumber readRawNumber(int initial) throws IOException {
+        scanNumber(initial);
+        char[] buf = numBuf;
+        int len = numLen;
+        checkNumber(buf, len);
+        byte[] text = new byte[len];
+        for (int i = 0; i < len; i++) {
+            text[i] = (byte) buf[i];
+        }
+        return new JsonNumber(text);
+    }
+
+    //
+    // Grow numBuf, keeping its contents.
+    //
+    protected final void growNumBuf() {
+        char[] b = new char[numBuf.length * 2];
+        System.arraycopy(numBuf, 0, b, 0, numLen);
+        numBuf = b;
+    }
+
+    /**
+     * Convert the characters of a number to Integer, Long or Double,
+     * following the same rules as JsonIO.readJSON(Reader).  Doubles are
+     * correctly rounded.
+     **/
+    static Number parseNumber(char[] buf, int len) throws IOException {
+        int i = 0;
+        boolean negative = false;
+        if (len > 0 && buf[0] == '-') {
+            negative = true;
+            i++;
+        }
+        long value = 0;
+            // Kept as a negative number, because
+            // abs(Long.MIN_VALUE) > abs(Long.MAX_VALUE)
+        boolean overflow = false;
+
+        //
+        // At the same time, we collect the significand and exponent
+        // for a double, in case it's needed.
+        //
+        long w = 0;
+        int q = 0;
+        boolean truncated = false;
+
+        int digitStart = i;
+        while (i < len && buf[i] >= '0' && buf[i] <= '9') {
+            int digit = buf[i++] - '0';
+            if (Long.compareUnsigned(w, DoubleParser.SIGNIFICAND_LIMIT) < 0) {
+                w = w * 10 + digit;
+            } else {
+                q++;
+                truncated |= digit != 0;
+            }
+            if (overflow) {
+                continue;
+            } else if (value < Long.MIN_VALUE / 10) {
+                overflow = true;
+            } else {
+                value *= 10;
+                if (value < Long.MIN_VALUE + digit) {
+                    overflow = true;
+                } else {
+                    value -= digit;
+                }
+            }
+        }
+        if (i == digitStart && !(i < len && (buf[i] == '.' || buf[i] == 'e'
+                                             || buf[i] == 'E'))) {
+            JsonIO.throwUnexpected(i < len ? buf[i] : -1);
+        }
+        boolean isDouble = false;
+        if (i < len && buf[i] == '.') {
+            isDouble = true;
+            i++;
+            while (i < len && buf[i] >= '0' && buf[i] <= '9') {
+                int digit = buf[i++] - '0';
+                if (Long.compareUnsigned(w, DoubleParser.SIGNIFICAND_LIMIT) < 0) {
+                    w = w * 10 + digit;
+                    q--;
+                } else {
+                    truncated |= digit != 0;
+                }
+            }
+        }
+        if (i < len && (buf[i] == 'e' || buf[i] == 'E')) {
+            isDouble = true;
+            i++;
+            boolean expNegative = false;
+            if (i < len && (buf[i] == '+' || buf[i] == '-')) {
+                expNegative = buf[i] == '-';
+                i++;
+            }
+            if (i >= len || buf[i] < '0' || buf[i] > '9') {
+                JsonIO.throwUnexpected(i < len ? buf[i] : -1);
+            }
+            int exp = 0;
+            while (i < len && buf[i] >= '0' && buf[i] <= '9') {
+                exp = Math.min(exp * 10 + (buf[i++] - '0'), JsonIO.MAX_EXPONENT);
+            }
+            q += expNegative ? -exp : exp;
+        }
+        if (i < len) {
+            JsonIO.throwUnexpected(buf[i]);
+        }
+        if (!isDouble && !overflow) {
+            if (negative) {
+                if (value >= Integer.MIN_VALUE) {
+                    return (int) value;
+                } else {
+                    return value;
+                }
+            } else if (value >= -Integer.MAX_VALUE) {
+                return (int) -value;
+            } else if (value != Long.MIN_VALUE) {
+                return -value;
+            }
+        }
+        double d = DoubleParser.toDouble(negative, w, q, truncated);
+        if (Double.isNaN(d)) {
+            //
+            // The '0' makes ".5" or "e3" something Java will parse
+            //
+            int start = negative ? 1 : 0;
+            d = Double.parseDouble((negative ? "-0" : "0")
+                                   + new String(buf, start, len - start));
+        }
+        return d;
+    }
+
+    //
+    // Check that buf[0..len) is a number that parseNumber() accepts,
+    // without converting it.
+    //
+    static void checkNumber(char[] buf, int len) throws IOException {
+        int i = 0;
+        if (len > 0 && buf[0] == '-') {
+            i++;
+        }
+        int digitStart = i;
+        while (i < len && buf[i] >= '0' && buf[i] <= '9') {
+            i++;
+        }
+        if (i == digitStart && !(i < len && (buf[i] == '.' || buf[i] == 'e'
+                                             || buf[i] == 'E'))) {
+            JsonIO.throwUnexpected(i < len ? buf[i] : -1);
+        }
+        if (i < len && buf[i] == '.') {
+            i++;
+            while (i < len && buf[i] >= '0' && buf[i] <= '9') {
+                i++;
+            }
+        }
+        if (i < len && (buf[i] == 'e' || buf[i] == 'E')) {
+            i++;
+            if (i < len && (buf[i] == '+' || buf[i] == '-')) {
+                i++;
+            }
+            if (i >= len || buf[i] < '0' || buf[i] > '9') {
+                JsonIO.throwUnexpected(i < len ? buf[i] : -1);
+            }
+            while (i < len && buf[i] >= '0' && buf[i] <= '9') {
+                i++;
+            }
+        }
+        if (i < len) {
+            JsonIO.throwUnexpected(buf[i]);
+        }
+    }
+
+    //
+    // Translate the character after a backslash in a string, for the
+    // escapes that don't need more input.
+    //
+    static char unescape(int c) {
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            default:
+                return (char) c;
+        }
+    }
+
+    static int hexValue(int ch) throws IOException {
+        if (ch >= '0' && ch <= '9') {
+            return ch - '0';
+        } else if (ch >= 'A' && ch <= 'F') {
+            return ch - 'A' + 10;
+        } else if (ch >= 'a' && ch <= 'f') {
+            return ch - 'a' + 10;
+        } else {
+            JsonIO.throwUnexpected(ch);
+            return 0;
+        }
+    }
+}
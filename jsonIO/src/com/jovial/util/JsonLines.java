@@ -0,0 +1,296 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Support for JSON Lines (also called NDJSON), where a file holds one JSON
+ * value per line.  Records can be read one at a time from any JsonReader,
+ * written with a JsonWriter, or read in parallel:  the input is split into
+ * chunks at newlines, and the chunks are parsed at the same time on a
+ * ForkJoinPool.
+ * <p>
+ * The parallel methods rely on the JSON Lines rule that a record doesn't
+ * contain a raw newline.  Newlines within strings must be escaped, which
+ * JsonIO and JsonWriter always do.
+ * <p>
+ * Records are in the same form that JsonIO.readJSON produces.
+ *
+ * @see JsonIO
+ */
+@SuppressWarnings("unchecked")
+public final class JsonLines {
+
+    //
+    // Chunks for parallel parsing are at least this big...
+    //
+    private static final long MIN_CHUNK = 1L << 20;
+
+    //
+    // ... and at most this big, before they're extended to a newline.
+    //
+    private static final long MAX_CHUNK = 1L << 28;
+
+    //
+    // No public constructor
+    //
+    private JsonLines() {
+    }
+
+    /**
+     * Give an iterator over the records read by rdr.  Each call to next()
+     * reads one record, so records are never all in memory at once.
+     * IOExceptions are thrown as UncheckedIOException.  The iterator
+     * doesn't close rdr.
+     **/
+    public static Iterator records(final JsonReader rdr) {
+        return new Iterator() {
+            public boolean hasNext() {
+                try {
+                    return rdr.peek() != JsonReader.Token.END_DOCUMENT;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return rdr.readValue();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        };
+    }
+
+    /**
+     * Write one record, followed by a newline.
+     **/
+    public static void write(JsonWriter out, Object record) throws IOException {
+        out.write(record);
+        out.writeRaw('\n');
+    }
+
+    /**
+     * Write each of the records, one per line.  The records are consumed
+     * as they're written.
+     **/
+    public static void write(JsonWriter out, Iterator records)
+            throws IOException
+    {
+        while (records.hasNext()) {
+            write(out, records.next());
+        }
+    }
+
+    /**
+     * Read all the records in a file in parallel, and return them in order.
+     *
+     * @see #forEachParallel(Path, ForkJoinPool, boolean, Consumer)
+     **/
+    public static List readParallel(Path path, ForkJoinPool pool)
+            throws IOException
+    {
+        final ArrayList result = new ArrayList();
+        forEachParallel(path, pool, true, new Consumer() {
+            public void accept(Object record) {
+                result.add(record);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Read all the records in buf, from its position to its limit, in
+     * parallel, and return them in order.
+     *
+     * @see #forEachParallel(ByteBuffer, ForkJoinPool, boolean, Consumer)
+     **/
+    public static List readParallel(ByteBuffer buf, ForkJoinPool pool)
+            throws IOException
+    {
+        final ArrayList result = new ArrayList();
+        forEachParallel(buf, pool, true, new Consumer() {
+            public void accept(Object record) {
+                result.add(record);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Parse the records in a file in parallel, and give each one to
+     * action.  The file is mapped into memory a chunk at a time, so files
+     * of any size can be read, with the number of chunks in memory
+     * bounded by the pool's parallelism.
+     *
+     * @param   ordered If true, action is called on the calling thread, with
+     *                  the records in the order they're in the file.  If
+     *                  false, action is called from the pool's threads as
+     *                  records are parsed, in no particular order, so it must
+     *                  be thread-safe; this gives the best throughput.
+     *
+     * @throws  IOException if there is an underlying IO exception, or a
+     *                      syntax error.  If that, or an exception from
+     *                      action, stops the read, the chunks that haven't
+     *                      started are dropped, and the ones that have are
+     *                      waited for, so action isn't called once this
+     *                      returns.
+     **/
+    public static void forEachParallel(Path path, ForkJoinPool pool,
+                                       boolean ordered, Consumer action)
+            throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            forEachParallel(new ByteSource.FileSource(channel), pool, ordered, action);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Parse the records in buf, from its position to its limit, in
+     * parallel, and give each one to action.  buf's position isn't changed.
+     *
+     * @see #forEachParallel(Path, ForkJoinPool, boolean, Consumer)
+     **/
+    public static void forEachParallel(ByteBuffer buf, ForkJoinPool pool,
+                                       boolean ordered, Consumer action)
+            throws IOException
+    {
+        forEachParallel(new ByteSource.BufferSource(buf), pool, ordered, action);
+    }
+
+    private static void forEachParallel(final ByteSource src, ForkJoinPool pool,
+                                        final boolean ordered,
+                                        final Consumer action)
+            throws IOException
+    {
+        long size = src.size();
+        int parallelism = pool.getParallelism();
+        long chunk = size / (parallelism * 8L);
+        chunk = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, chunk));
+
+        //
+        // Keep a bounded number of chunks in flight, so memory use doesn't
+        // depend on the size of the input.
+        //
+        int window = parallelism * 2;
+        ArrayDeque<Future> inFlight = new ArrayDeque<Future>();
+        final AtomicBoolean stop = new AtomicBoolean();
+        long start = 0;
+        try {
+            while (start < size || !inFlight.isEmpty()) {
+                while (start < size && inFlight.size() < window) {
+                    final long s = start;
+                    final long e = src.nextLine(Math.min(size, start + chunk));
+                    inFlight.add(pool.submit(new Callable() {
+                        public Object call() throws IOException {
+                            return parseChunk(src.chunk(s, e),
+                                              ordered ? null : action, stop);
+                        }
+                    }));
+                    start = e;
+                }
+                List records = (List) await(inFlight.peekFirst());
+                inFlight.removeFirst();
+                if (ordered) {
+                    for (int i = 0; i < records.size(); i++) {
+                        action.accept(records.get(i));
+                    }
+                }
+            }
+        } finally {
+            if (!inFlight.isEmpty()) {
+                stop.set(true);
+                awaitAll(inFlight);
+            }
+        }
+    }
+
+    //
+    // Parse the records in a chunk.  If action is null, return them;
+    // otherwise give them to action.  Once stop is set, give up.
+    //
+    private static List parseChunk(ByteBuffer buf, Consumer action,
+                                   AtomicBoolean stop)
+            throws IOException
+    {
+        JsonReader rdr = new JsonReader(buf);
+        List result = (action == null) ? new ArrayList() : null;
+        while (!stop.get() && rdr.peek() != JsonReader.Token.END_DOCUMENT) {
+            Object record = rdr.readValue();
+            if (action == null) {
+                result.add(record);
+            } else {
+                action.accept(record);
+            }
+        }
+        return result;
+    }
+
+    //
+    // Wait for tasks that are being given up on, ignoring how they end.
+    // The caller has told them to stop, so the ones that haven't started
+    // do nothing; once this returns, none of them is still running.
+    // Future.cancel() isn't enough for that, since a ForkJoinTask that's
+    // cancelled while it's running carries on.
+    //
+    static void awaitAll(Collection<Future> tasks) {
+        boolean interrupted = false;
+        for (Future f : tasks) {
+            for (;;) {
+                try {
+                    f.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //
+    // Wait for a task, unwrapping any IOException it threw
+    //
+    static Object await(Future f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            //
+            // ForkJoinTask wraps checked exceptions, sometimes more than once
+            //
+            for (Throwable t = ex.getCause(); t != null; t = t.getCause()) {
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                }
+            }
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
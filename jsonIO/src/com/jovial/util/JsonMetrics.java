@@ -0,0 +1,202 @@
+package com.jovial.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional instrumentation of the documents JsonIO reads and writes, for
+ * finding out why a call is slow in production.  When enabled, each
+ * document read or written by JsonIO.readJSON or JsonIO.writeJSON is
+ * counted:  its size, how many values, strings and numbers it held, how
+ * many escapes were decoded or written, its deepest nesting, the time
+ * taken, and an estimate of the bytes allocated by the thread doing it.
+ * The totals are kept in LongAdders, so threads don't contend over them,
+ * and can be read with snapshot().
+ * <p>
+ * Each document is also reported as a JFR event, com.jovial.util.JsonRead
+ * or com.jovial.util.JsonWrite, when a flight recording with those events
+ * enabled is running.  The events carry the same counts for just that
+ * document, and its duration.
+ * <p>
+ * Metrics are off by default.  They're turned on with setEnabled(true),
+ * or by running with -Dcom.jovial.util.JsonMetrics=true.  When they're
+ * off, the cost is one check of a flag per document, and a null check per
+ * value; the java.management and jdk.jfr modules aren't touched until
+ * metrics are first turned on.  The lazy and parallel readers, JsonPushParser, JsonBinary and
+ * direct uses of JsonReader and JsonWriter aren't counted.
+ *
+ * @see JsonIO
+ */
+public final class JsonMetrics {
+
+    private static volatile boolean enabled
+        = Boolean.getBoolean("com.jovial.util.JsonMetrics");
+
+    private static final LongAdder documentsRead = new LongAdder();
+    private static final LongAdder documentsWritten = new LongAdder();
+    private static final LongAdder bytesRead = new LongAdder();
+    private static final LongAdder bytesWritten = new LongAdder();
+    private static final LongAdder values = new LongAdder();
+    private static final LongAdder strings = new LongAdder();
+    private static final LongAdder numbers = new LongAdder();
+    private static final LongAdder escapes = new LongAdder();
+    private static final LongAdder allocated = new LongAdder();
+    private static final LongAdder nanos = new LongAdder();
+
+    //
+    // Set if the JFR events can't be used, because the jdk.jfr module
+    // isn't there
+    //
+    private static volatile boolean noEvents = false;
+
+    //
+    // No public constructor
+    //
+    private JsonMetrics() {
+    }
+
+    /**
+     * Turn the counting of documents on or off.
+     **/
+    public static void setEnabled(boolean v) {
+        enabled = v;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Give the totals since the start, or since reset().  The keys are
+     * documentsRead, documentsWritten, bytesRead, bytesWritten, values,
+     * strings, numbers, escapes, allocatedBytes and nanos.  bytesRead
+     * leaves out documents whose size isn't known, like those read from
+     * an InputStream.  The totals are read one at a time, so a snapshot
+     * taken while documents are in progress may be a little inconsistent.
+     **/
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        result.put("documentsRead", documentsRead.sum());
+        result.put("documentsWritten", documentsWritten.sum());
+        result.put("bytesRead", bytesRead.sum());
+        result.put("bytesWritten", bytesWritten.sum());
+        result.put("values", values.sum());
+        result.put("strings", strings.sum());
+        result.put("numbers", numbers.sum());
+        result.put("escapes", escapes.sum());
+        result.put("allocatedBytes", allocated.sum());
+        result.put("nanos", nanos.sum());
+        return result;
+    }
+
+    /**
+     * Set all the totals to zero.
+     **/
+    public static void reset() {
+        documentsRead.reset();
+        documentsWritten.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        values.reset();
+        strings.reset();
+        numbers.reset();
+        escapes.reset();
+        allocated.reset();
+        nanos.reset();
+    }
+
+    /**
+     * Start counting a document, if metrics are on.  Return the JsonStats
+     * to count it with, or null.
+     **/
+    static JsonStats begin(boolean read) {
+        if (!enabled) {
+            return null;
+        }
+        JsonStats s = new JsonStats();
+        if (!noEvents) {
+            try {
+                s.event = JsonEvents.begin(read);
+            } catch (LinkageError ex) {
+                noEvents = true;
+            }
+        }
+        s.startAllocated = Allocation.current();
+        s.startNanos = System.nanoTime();
+        return s;
+    }
+
+    /**
+     * Finish counting a document that was read, of the given size in
+     * bytes, or -1 if that's not known.
+     **/
+    static void endRead(JsonStats s, long bytes) {
+        long elapsed = System.nanoTime() - s.startNanos;
+        documentsRead.increment();
+        if (bytes >= 0) {
+            bytesRead.add(bytes);
+        }
+        add(s, elapsed);
+        if (s.event != null) {
+            JsonEvents.end(s, bytes);
+        }
+    }
+
+    /**
+     * Finish counting a document that was written, of the given size.
+     **/
+    static void endWrite(JsonStats s, long bytes) {
+        long elapsed = System.nanoTime() - s.startNanos;
+        documentsWritten.increment();
+        bytesWritten.add(bytes);
+        add(s, elapsed);
+        if (s.event != null) {
+            JsonEvents.end(s, bytes);
+        }
+    }
+
+    private static void add(JsonStats s, long elapsed) {
+        values.add(s.values);
+        strings.add(s.strings);
+        numbers.add(s.numbers);
+        escapes.add(s.escapes);
+        nanos.add(elapsed);
+        allocated.add(Allocation.current() - s.startAllocated);
+    }
+
+    //
+    // The allocation estimate.  It's in a class of its own, so that
+    // java.management is only loaded once metrics are used.
+    //
+    private static final class Allocation {
+
+        // null if the JVM can't give it
+        private static final com.sun.management.ThreadMXBean THREADS;
+
+        static {
+            com.sun.management.ThreadMXBean threads = null;
+            try {
+                ThreadMXBean t = ManagementFactory.getThreadMXBean();
+                if (t instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) t)
+                                .isThreadAllocatedMemorySupported()) {
+                    threads = (com.sun.management.ThreadMXBean) t;
+                }
+            } catch (LinkageError ex) {
+                // No java.management module
+            }
+            THREADS = threads;
+        }
+
+        //
+        // Give the bytes allocated by this thread so far, or 0 if that
+        // can't be had
+        //
+        static long current() {
+            return (THREADS == null)
+                    ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+        }
+    }
+}
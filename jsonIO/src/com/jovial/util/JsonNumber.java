@@ -0,0 +1,103 @@
+package com.jovial.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A number that keeps the text it was read from, and is only converted
+ * when it's used.  JsonReader gives these in place of Integer, Long and
+ * Double when setRawNumbers(true) is set.  Numbers that are only passed
+ * on, like IDs, are never converted, and JsonWriter writes the original
+ * text back out unchanged.  That also keeps every digit of a number that
+ * doesn't fit in a double; toBigDecimal() gives it exactly.
+ * <p>
+ * The text is checked when it's read, so the conversions don't fail.
+ * The first of intValue(), longValue(), floatValue() or doubleValue()
+ * converts the text with the same rules as JsonIO.readJSON, and the
+ * result is kept; value() gives it.
+ * <p>
+ * Two JsonNumbers are equal if they have the same text, so 1.0 and 1.00
+ * aren't equal.  A JsonNumber is never equal to an Integer, Long or
+ * Double; compare value() for that.
+ *
+ * @see JsonReader#setRawNumbers(boolean)
+ */
+public final class JsonNumber extends Number {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] text;      // ASCII
+    private transient Number value;         // null until converted
+
+    JsonNumber(byte[] text) {
+        this.text = text;
+    }
+
+    /**
+     * Give the number as readJSON would:  an Integer, Long or Double.
+     **/
+    public Number value() {
+        Number v = value;
+        if (v == null) {
+            char[] chars = new char[text.length];
+            for (int i = 0; i < text.length; i++) {
+                chars[i] = (char) text[i];
+            }
+            try {
+                v = value = JsonLexer.parseNumber(chars, chars.length);
+            } catch (IOException ex) {
+                // Can't happen; the text was checked when it was read
+                throw new NumberFormatException(toString());
+            }
+        }
+        return v;
+    }
+
+    public int intValue() {
+        return value().intValue();
+    }
+
+    public long longValue() {
+        return value().longValue();
+    }
+
+    public float floatValue() {
+        return value().floatValue();
+    }
+
+    public double doubleValue() {
+        return value().doubleValue();
+    }
+
+    /**
+     * Give the number exactly, with all of its digits.
+     **/
+    public BigDecimal toBigDecimal() {
+        return new BigDecimal(toString());
+    }
+
+    /**
+     * Give the text the number was read from.
+     **/
+    public String toString() {
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+    //
+    // For JsonWriter
+    //
+    byte[] text() {
+        return text;
+    }
+
+    public boolean equals(Object other) {
+        return other instanceof JsonNumber
+                && Arrays.equals(text, ((JsonNumber) other).text);
+    }
+
+    public int hashCode() {
+        return Arrays.hashCode(text);
+    }
+}
@@ -0,0 +1,271 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A query that pulls a few values out of a document, without reading the
+ * rest of it.  A path is a JSON Pointer (RFC 6901), like "/meta/requestId"
+ * or "/items/0/price", where a segment can also be "*" to match every
+ * member of an object or every element of an array, as in
+ * "/items/*&#47;price".  "" selects the whole document.
+ * <p>
+ * The input is walked with a JsonReader.  Only the values that are
+ * selected are built; everything else is passed over with skipValue(),
+ * which follows just the nesting and the strings of an object or array
+ * that's not on the path, and steps over numbers without converting them.
+ * That makes a query over a big document many times faster than readJSON.
+ * Because skipped parts aren't parsed, some syntax errors in them go
+ * unnoticed.
+ * <p>
+ * A segment matches an object member by name, with the name of a
+ * non-string key given by toString().  A segment that's a non-negative
+ * integer also matches the array element with that index.  If an object
+ * has a key more than once, only the last of them is used, as readJSON
+ * keeps the last; what the earlier ones would have selected is dropped.
+ * In a segment,
+ * "~1" stands for '/' and "~0" for '~'.  Selected values are in the same
+ * form that JsonIO.readJSON produces.  A JsonPath is immutable, and can be
+ * shared between threads.
+ *
+ * @see JsonReader#skipValue()
+ */
+public final class JsonPath {
+
+    private final String path;
+    private final String[] names;       // null for "*"
+    private final int[] indices;        // -1 if not an array index
+
+    private JsonPath(String path, String[] names, int[] indices) {
+        this.path = path;
+        this.names = names;
+        this.indices = indices;
+    }
+
+    /**
+     * Give the JsonPath for a JSON Pointer, which may contain "*"
+     * segments.
+     *
+     * @throws  IllegalArgumentException if path isn't "" and doesn't start
+     *                                   with '/', or has a bad '~' escape.
+     **/
+    public static JsonPath compile(String path) {
+        if (path.isEmpty()) {
+            return new JsonPath(path, new String[0], new int[0]);
+        } else if (path.charAt(0) != '/') {
+            throw new IllegalArgumentException("Path must start with '/':  "
+                                               + path);
+        }
+        String[] segments = path.substring(1).split("/", -1);
+        String[] names = new String[segments.length];
+        int[] indices = new int[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            String seg = segments[i];
+            if (seg.equals("*")) {
+                names[i] = null;
+                indices[i] = -1;
+                continue;
+            }
+            names[i] = unescape(seg, path);
+            indices[i] = arrayIndex(names[i]);
+        }
+        return new JsonPath(path, names, indices);
+    }
+
+    private static String unescape(String seg, String path) {
+        if (seg.indexOf('~') < 0) {
+            return seg;
+        }
+        StringBuilder sb = new StringBuilder(seg.length());
+        for (int i = 0; i < seg.length(); i++) {
+            char c = seg.charAt(i);
+            if (c != '~') {
+                sb.append(c);
+            } else if (i + 1 < seg.length() && seg.charAt(i + 1) == '0') {
+                sb.append('~');
+                i++;
+            } else if (i + 1 < seg.length() && seg.charAt(i + 1) == '1') {
+                sb.append('/');
+                i++;
+            } else {
+                throw new IllegalArgumentException("Bad escape in " + path);
+            }
+        }
+        return sb.toString();
+    }
+
+    //
+    // Give the array index a segment names, or -1.  As in RFC 6901, "0"
+    // is the only index that starts with a zero.
+    //
+    private static int arrayIndex(String seg) {
+        int len = seg.length();
+        if (len == 0 || len > 9 || (len > 1 && seg.charAt(0) == '0')) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = 0; i < len; i++) {
+            char c = seg.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * Read the next value from rdr, and give the parts of it that the path
+     * selects, in the order they appear in the input.  The whole value is
+     * consumed.
+     *
+     * @throws  IOException if there is an underlying IO exception, or a
+     *                      syntax error.
+     **/
+    public List<Object> selectAll(JsonReader rdr) throws IOException {
+        ArrayList<Object> result = new ArrayList<Object>();
+        select(rdr, 0, result, Integer.MAX_VALUE, true);
+        return result;
+    }
+
+    /**
+     * Give the parts of the document in buf that the path selects, in the
+     * order they appear.  buf holds UTF-8, from its position to its limit;
+     * its position isn't changed.
+     *
+     * @throws  IOException if there is a syntax error.
+     **/
+    public List<Object> selectAll(ByteBuffer buf) throws IOException {
+        return selectAll(new JsonReader(buf));
+    }
+
+    /**
+     * @see #selectAll(ByteBuffer)
+     **/
+    public List<Object> selectAll(byte[] buf) throws IOException {
+        return selectAll(new JsonReader(buf));
+    }
+
+    /**
+     * Give the first part of the document in buf that the path selects,
+     * or null if there isn't one.  Once it's found, the rest of the arrays
+     * it's in is skipped without being looked at, so for a path like
+     * "/0/price" near the front of a big array, this is much faster than
+     * selectAll.  An object it's in is still read to its end, with the
+     * values skipped, in case a key is given again.  buf holds UTF-8, from
+     * its position to its limit; its position isn't changed.
+     *
+     * @throws  IOException if there is a syntax error.
+     **/
+    public Object select(ByteBuffer buf) throws IOException {
+        return first(new JsonReader(buf));
+    }
+
+    /**
+     * @see #select(ByteBuffer)
+     **/
+    public Object select(byte[] buf) throws IOException {
+        return first(new JsonReader(buf));
+    }
+
+    /**
+     * Give the first part of the document read from rdr that the path
+     * selects, or null if there isn't one.  Reading stops as soon as it's
+     * found, unless it's in an object.  rdr isn't closed.
+     *
+     * @see #select(ByteBuffer)
+     **/
+    public Object select(Reader rdr) throws IOException {
+        return first(new JsonReader(rdr));
+    }
+
+    private Object first(JsonReader rdr) throws IOException {
+        ArrayList<Object> result = new ArrayList<Object>(1);
+        select(rdr, 0, result, 1, false);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    //
+    // Select from the next value, with the path matched up to level.  Stop
+    // as soon as result has max values, and return true.  If finish is
+    // false, the rest of the input is left unread; otherwise the rest of
+    // the value is skipped first.
+    //
+    private boolean select(JsonReader rdr, int level, List<Object> result,
+                           int max, boolean finish) throws IOException
+    {
+        if (level == names.length) {
+            result.add(rdr.readValue());
+            return result.size() >= max;
+        }
+        String name = names[level];
+        int index = indices[level];
+        JsonReader.Token t = rdr.peek();
+        if (t == JsonReader.Token.BEGIN_OBJECT) {
+            //
+            // A later duplicate of a key replaces what an earlier one
+            // selected, so we read to the end of the object, even once we
+            // have max values.  For "*", what each key selects is kept
+            // apart until then, in the order of the last of each key.
+            //
+            rdr.beginObject();
+            int mark = result.size();
+            LinkedHashMap<String, List<Object>> members = null;
+            if (name == null) {
+                members = new LinkedHashMap<String, List<Object>>();
+            }
+            while (rdr.hasNext()) {
+                String key = rdr.nextName();
+                if (name == null) {
+                    List<Object> found = new ArrayList<Object>();
+                    select(rdr, level + 1, found, max, true);
+                    members.remove(key);
+                    if (!found.isEmpty()) {
+                        members.put(key, found);
+                    }
+                } else if (name.equals(key)) {
+                    result.subList(mark, result.size()).clear();
+                    select(rdr, level + 1, result, max, true);
+                } else {
+                    rdr.skipValue();
+                }
+            }
+            rdr.endObject();
+            if (members != null) {
+                for (List<Object> found : members.values()) {
+                    result.addAll(found);
+                }
+            }
+        } else if (t == JsonReader.Token.BEGIN_ARRAY) {
+            rdr.beginArray();
+            for (int i = 0; rdr.hasNext(); i++) {
+                if (name != null && i != index) {
+                    rdr.skipValue();
+                } else if (select(rdr, level + 1, result, max, finish)) {
+                    if (!finish) {
+                        return true;
+                    }
+                    while (rdr.hasNext()) {
+                        rdr.skipValue();
+                    }
+                }
+            }
+            rdr.endArray();
+        } else {
+            rdr.skipValue();
+        }
+        return result.size() >= max;
+    }
+
+    //
+    // For JsonProjection:  the names in the path, null for "*"
+    //
+    String[] segments() {
+        return names;
+    }
+
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,119 @@
+package com.jovial.util;
+
+import java.util.*;
+
+/**
+ * A set of key paths that says which members of a document to keep when
+ * it's read.  Members that aren't on one of the paths are passed over at
+ * the lexical level, with JsonReader.skipValue():  their strings and
+ * numbers are stepped over without being decoded or converted, and no
+ * Maps or Lists are made.  Only the key is read, to match it against the
+ * paths; with a JsonKeyCache, that usually doesn't make a String either.
+ * What's kept has the usual shape:  an object comes back as a Map with
+ * just the selected members, and an array as a List.  When only a few of
+ * many members are wanted, this is much cheaper than reading everything
+ * and throwing most of it away.
+ * <p>
+ * The paths are JSON Pointers, like JsonPath, so "/user/name" keeps the
+ * member "name" of the member "user" of the top-level object, with all
+ * of its contents.  A segment "*" matches any member.  Unlike JsonPath,
+ * arrays don't take a segment of a path:  each element of an array is
+ * projected in the same way as the array, so "/records/id" keeps the
+ * "id" of every object in the array "records".  Object keys that aren't
+ * strings are matched by toString().  A path of "" keeps everything.
+ * <p>
+ * A JsonProjection is immutable, and can be shared between threads.
+ *
+ * @see JsonReader#setProjection(JsonProjection)
+ * @see JsonIO#readJSON(byte[], JsonProjection)
+ * @see JsonPath
+ */
+public final class JsonProjection {
+
+    //
+    // Keeps everything below it
+    //
+    static final JsonProjection ALL = new JsonProjection(null, null);
+
+    private final Map<String, JsonProjection> members;     // null for ALL
+    private final JsonProjection others;        // For unnamed members
+
+    private JsonProjection(Map<String, JsonProjection> members,
+                           JsonProjection others)
+    {
+        this.members = members;
+        this.others = others;
+    }
+
+    /**
+     * Give the projection that keeps the given paths, and everything they
+     * lead to.
+     *
+     * @throws  IllegalArgumentException if a path isn't "" and doesn't
+     *                                   start with '/', or has a bad '~'
+     *                                   escape.
+     *
+     * @see JsonPath#compile(String)
+     **/
+    public static JsonProjection of(String... paths) {
+        return of(Arrays.asList(paths));
+    }
+
+    /**
+     * @see #of(String...)
+     **/
+    public static JsonProjection of(Collection<String> paths) {
+        List<String[]> segments = new ArrayList<String[]>(paths.size());
+        for (String p : paths) {
+            segments.add(JsonPath.compile(p).segments());
+        }
+        return build(segments, 0);
+    }
+
+    //
+    // Make the projection for the paths, from segment level on.  The
+    // paths under "*" are merged into each named member, so a lookup never
+    // has to combine two projections.
+    //
+    private static JsonProjection build(List<String[]> paths, int level) {
+        List<String[]> wild = new ArrayList<String[]>();
+        Map<String, List<String[]>> named
+            = new HashMap<String, List<String[]>>();
+        for (String[] p : paths) {
+            if (p.length == level) {
+                return ALL;
+            } else if (p[level] == null) {
+                wild.add(p);
+            } else {
+                List<String[]> l = named.get(p[level]);
+                if (l == null) {
+                    l = new ArrayList<String[]>();
+                    named.put(p[level], l);
+                }
+                l.add(p);
+            }
+        }
+        Map<String, JsonProjection> members
+            = new HashMap<String, JsonProjection>();
+        for (Map.Entry<String, List<String[]>> e : named.entrySet()) {
+            List<String[]> l = e.getValue();
+            l.addAll(wild);
+            members.put(e.getKey(), build(l, level + 1));
+        }
+        JsonProjection others = wild.isEmpty() ? null : build(wild, level + 1);
+        return new JsonProjection(members, others);
+    }
+
+    /**
+     * Give the projection for the member of an object with the given key,
+     * or null if the member isn't kept.
+     **/
+    JsonProjection member(Object key) {
+        if (members == null) {
+            return ALL;
+        }
+        JsonProjection result = members.get(key instanceof String
+                                            ? key : String.valueOf(key));
+        return (result == null) ? others : result;
+    }
+}
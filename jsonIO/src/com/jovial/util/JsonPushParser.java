@@ -0,0 +1,224 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A non-blocking parser for a stream of JSON values, for input that
+ * arrives in pieces, like the buffers read from a socket by a selector
+ * thread.  Bytes are pushed in with feed() as they arrive, split anywhere
+ * at all, even in the middle of a string, escape, number or comment.
+ * Each time a top-level value is complete, it's given to a handler, in
+ * the same form that JsonIO.readJSON produces.  The parser never blocks,
+ * and never holds a thread while waiting for input.
+ * <p>
+ * The bytes of each piece are followed with a JsonScanner, which tracks
+ * just enough state to see where a value ends.  A value that's wholly
+ * within one piece is parsed in place; only the bytes of a value that
+ * spans pieces are copied, into a buffer that's reused.  setMaxValueSize()
+ * puts a bound on that buffer.
+ * <p>
+ * The grammar accepted is the same as JsonReader's, with any number of
+ * top-level values.  A number or constant at the end of the input is only
+ * known to be complete when finish() is called.  After an IOException,
+ * the parser can't be used any more.  A JsonPushParser is not thread-safe.
+ *
+ * @see JsonReader
+ */
+public final class JsonPushParser {
+
+    private final Consumer<Object> handler;
+    private final JsonScanner scanner = new JsonScanner(1, 0);
+
+    //
+    // The bytes of the value we're in the middle of, from earlier pieces
+    //
+    private byte[] pending = new byte[256];
+    private int pendingLength;
+    private boolean inValue;
+
+    private int maxValueSize = Integer.MAX_VALUE;
+    private boolean primitiveArrays = false;
+    private boolean compactMaps = false;
+    private boolean rawNumbers = false;
+    private JsonKeyCache keyCache = null;
+
+    /**
+     * Create a parser that gives each top-level value to handler, as
+     * soon as it's complete.  handler is called from feed() and finish().
+     **/
+    public JsonPushParser(Consumer<Object> handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Set the largest value, in bytes, that can be split over pieces of
+     * input.  A bigger value causes an IOException, so that a peer can't
+     * make us buffer without bound.  The default is no limit.
+     **/
+    public void setMaxValueSize(int bytes) {
+        maxValueSize = bytes;
+    }
+
+    /**
+     * @see JsonReader#setPrimitiveArrays(boolean)
+     **/
+    public void setPrimitiveArrays(boolean v) {
+        primitiveArrays = v;
+    }
+
+    /**
+     * @see JsonReader#setCompactMaps(boolean)
+     **/
+    public void setCompactMaps(boolean v) {
+        compactMaps = v;
+    }
+
+    /**
+     * @see JsonReader#setRawNumbers(boolean)
+     **/
+    public void setRawNumbers(boolean v) {
+        rawNumbers = v;
+    }
+
+    /**
+     * @see JsonReader#setKeyCache(JsonKeyCache)
+     **/
+    public void setKeyCache(JsonKeyCache cache) {
+        keyCache = cache;
+    }
+
+    /**
+     * Parse the UTF-8 bytes in buf, from its position to its limit.  All
+     * of them are consumed, so buf's position is set to its limit.  Any
+     * values that are completed are given to the handler before this
+     * returns.
+     *
+     * @throws  IOException if there is a syntax error, or a value is
+     *                      too big.
+     **/
+    public void feed(ByteBuffer buf) throws IOException {
+        int pos = buf.position();
+        int limit = buf.limit();
+        int start = pos;            // Of the value we're in
+        while (pos < limit) {
+            pos = scanner.scan(buf, pos, limit);
+            switch (scanner.lastEvent()) {
+                case JsonScanner.START:
+                case JsonScanner.OPEN:
+                    inValue = true;
+                    start = pos - 1;
+                    break;
+                case JsonScanner.COMMA:
+                    if (scanner.depth() == 0) {
+                        JsonIO.throwUnexpected(',');
+                    }
+                    break;
+                case JsonScanner.CLOSE:
+                    if (scanner.depth() < 0) {
+                        JsonIO.throwUnexpected(buf.get(pos - 1));
+                    }
+                    complete(buf, start, pos);
+                    break;
+                case JsonScanner.END:
+                    complete(buf, start, pos);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (inValue) {
+            append(buf, start, limit);
+        }
+        buf.position(limit);
+    }
+
+    /**
+     * Parse len bytes of UTF-8 from b, starting at off.
+     *
+     * @see #feed(ByteBuffer)
+     **/
+    public void feed(byte[] b, int off, int len) throws IOException {
+        feed(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Signal the end of the input.  A number or constant that ends the
+     * input is given to the handler.
+     *
+     * @throws  IOException if the input ends in the middle of a value.
+     **/
+    public void finish() throws IOException {
+        if (inValue && scanner.inScalar()) {
+            complete(null, 0, 0);
+        } else if (inValue || !scanner.canEnd()) {
+            throw new IOException("Unexpected EOF");
+        }
+    }
+
+    /**
+     * Is the parser between values?  If so, the input could end here.
+     **/
+    public boolean isBetweenValues() {
+        return !inValue && scanner.canEnd();
+    }
+
+    //
+    // Add buf[start..end) to the pending bytes
+    //
+    private void append(ByteBuffer buf, int start, int end)
+            throws IOException
+    {
+        int n = end - start;
+        if (n > maxValueSize - pendingLength) {
+            throw new IOException("Value bigger than " + maxValueSize
+                                  + " bytes");
+        }
+        if (pendingLength + n > pending.length) {
+            int size = Math.max(pendingLength + n, pending.length * 2);
+            pending = Arrays.copyOf(pending, size);
+        }
+        ByteBuffer b = buf.duplicate();
+        b.limit(end);
+        b.position(start);
+        b.get(pending, pendingLength, n);
+        pendingLength += n;
+    }
+
+    //
+    // A value ends at buf[end], and started at buf[start] or in the
+    // pending bytes.  Parse it and hand it off.
+    //
+    private void complete(ByteBuffer buf, int start, int end)
+            throws IOException
+    {
+        ByteBuffer value;
+        if (pendingLength == 0) {
+            value = buf.duplicate();
+            value.limit(end);
+            value.position(start);
+        } else {
+            if (buf != null) {
+                append(buf, start, end);
+            }
+            value = ByteBuffer.wrap(pending, 0, pendingLength);
+        }
+        JsonReader rdr = new JsonReader(value);
+        rdr.setPrimitiveArrays(primitiveArrays);
+        rdr.setCompactMaps(compactMaps);
+        rdr.setRawNumbers(rawNumbers);
+        rdr.setKeyCache(keyCache);
+        Object result = rdr.readValue();
+        if (rdr.peek() != JsonReader.Token.END_DOCUMENT) {
+            throw new IOException("Syntax error:  extra input after a value");
+        }
+        inValue = false;
+        pendingLength = 0;
+        if (pending.length > 65536) {
+            pending = new byte[256];    // Don't hang on to a big buffer
+        }
+        handler.accept(result);
+    }
+}
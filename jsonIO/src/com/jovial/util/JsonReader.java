@@ -0,0 +1,949 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A streaming, pull-style reader for JSON.  Where JsonIO.readJSON builds
+ * the whole document in memory, JsonReader hands out one token at a
+ * time, so a document of any size can be processed in constant memory.
+ * Parts of a document can still be turned into the usual HashMap/ArrayList
+ * form with readValue(), and parts that aren't wanted can be passed over
+ * with skipValue().
+ * <p>
+ * The grammar accepted is the same as JsonIO.readJSON(Reader), including
+ * comments and single-quoted strings.  A stream may contain any number of
+ * top-level values, one after the other; peek() returns END_DOCUMENT when
+ * they run out.
+ * <p>
+ * A typical use looks like this:
+ * <pre>
+ *      JsonReader rdr = new JsonReader(new FileReader("big.json"));
+ *      rdr.beginArray();
+ *      while (rdr.hasNext()) {
+ *          rdr.beginObject();
+ *          while (rdr.hasNext()) {
+ *              String name = rdr.nextName();
+ *              if (name.equals("id")) {
+ *                  System.out.println(rdr.nextNumber());
+ *              } else {
+ *                  rdr.skipValue();
+ *              }
+ *          }
+ *          rdr.endObject();
+ *      }
+ *      rdr.endArray();
+ *      rdr.close();
+ * </pre>
+ * A JsonReader is not thread-safe.
+ *
+ * @see JsonIO
+ */
+@SuppressWarnings("unchecked")
+public final class JsonReader implements Closeable {
+
+    /**
+     * The kinds of token a JsonReader can produce.
+     **/
+    public static enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME,
+        STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    //
+    // The values kept on our stack of scopes
+    //
+    private static final int TOP = 0;
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int OBJECT_KEY = 3;        // Expecting key or '}'
+    private static final int OBJECT_VALUE = 4;      // Expecting ':' value
+
+    private JsonLexer lexer;
+    private int[] stack = new int[32];
+    private int depth = 0;
+    private int maxDepth = Integer.MAX_VALUE;
+
+    //
+    // For readValue(), the objects and arrays being built, and the key of
+    // the member being read for each object, indexed by depth like stack.
+    //
+    private Object[] containers = new Object[32];
+    private Object[] keys = new Object[32];
+
+    //
+    // With a projection, the projection for each object and array being
+    // built, by depth.  ALL means nothing in it is skipped.
+    //
+    private JsonProjection projection = null;
+    private JsonProjection[] projections = null;
+
+    //
+    // With compactMaps, the members of the objects being built are kept
+    // here, in place of a container, until each object is complete.
+    // pendingStart gives where each object's members start, by depth.
+    //
+    private static final Object PENDING = new Object();
+    private Object[] pending = null;
+    private int pendingLength;
+    private int[] pendingStart = null;
+
+    //
+    // The token we've looked at, but not consumed, or null.  For true,
+    // false and null, the value is read when the token is peeked.
+    // Strings and numbers are read when they're consumed, so that
+    // skipping them is cheap; for them, peekedChar is the delimiter or
+    // the first character.
+    //
+    private Token peeked = null;
+    private Object peekedValue;
+    private int peekedChar;
+
+    //
+    // Options that control readValue()
+    //
+    private boolean primitiveArrays = false;
+    private boolean stringSlices = false;
+    private boolean compactMaps = false;
+    private boolean rawNumbers = false;
+    private JsonKeyCache keyCache = null;
+    private JsonStats stats = null;
+
+    /**
+     * Create a reader over the given characters.  The Reader doesn't need
+     * to be buffered, and it doesn't need to support mark().  Characters
+     * will be read ahead of the current token.
+     **/
+    public JsonReader(Reader rdr) {
+        this(new CharLexer(rdr));
+    }
+
+    /**
+     * Create a reader over UTF-8 encoded bytes from an InputStream.
+     * The bytes are decoded directly, without a java.io.Reader.  The
+     * stream doesn't need to be buffered; bytes will be read ahead of the
+     * current token.
+     **/
+    public JsonReader(InputStream in) {
+        this(new Utf8Lexer(in));
+    }
+
+    /**
+     * Create a reader over a byte array holding UTF-8.
+     **/
+    public JsonReader(byte[] buf) {
+        this(new Utf8Lexer(ByteBuffer.wrap(buf)));
+    }
+
+    /**
+     * Create a reader over the UTF-8 bytes in buf, from its position to
+     * its limit.  buf's position is not changed.
+     **/
+    public JsonReader(ByteBuffer buf) {
+        this(new Utf8Lexer(buf));
+    }
+
+    /**
+     * Create a reader over a file holding UTF-8.  The file is mapped
+     * into memory and parsed in place, so there's no copy of the input
+     * on the heap, and repeated reads of a file can be served from the
+     * operating system's page cache.  Files bigger than 2 GB are mapped
+     * in windows.  The file is closed by close().
+     *
+     * @throws  IOException if the file can't be opened.
+     **/
+    public JsonReader(Path path) throws IOException {
+        this(new Utf8Lexer(FileChannel.open(path, StandardOpenOption.READ)));
+    }
+
+    JsonReader(JsonLexer lexer) {
+        this.lexer = lexer;
+        stack[0] = TOP;
+    }
+
+    /**
+     * Start reading new input, from a byte array holding UTF-8.  The
+     * reader's buffers and options, including its key cache, are kept,
+     * so a reader that's reset for each of many small documents allocates
+     * much less than a new reader for each.  The old input isn't closed.
+     **/
+    public void reset(byte[] buf) {
+        reset(ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Start reading new input, from the UTF-8 bytes in buf, from its
+     * position to its limit.  buf's position is not changed.
+     *
+     * @see #reset(byte[])
+     **/
+    public void reset(ByteBuffer buf) {
+        if (lexer instanceof Utf8Lexer) {
+            ((Utf8Lexer) lexer).reset(buf);
+        } else {
+            lexer = new Utf8Lexer(buf);
+        }
+        resetState();
+    }
+
+    /**
+     * Start reading new input, from a stream of UTF-8 bytes.
+     *
+     * @see #reset(byte[])
+     **/
+    public void reset(InputStream in) {
+        if (lexer instanceof Utf8Lexer) {
+            ((Utf8Lexer) lexer).reset(in);
+        } else {
+            lexer = new Utf8Lexer(in);
+        }
+        resetState();
+    }
+
+    /**
+     * Start reading new input, from a stream of characters.
+     *
+     * @see #reset(byte[])
+     **/
+    public void reset(Reader rdr) {
+        if (lexer instanceof CharLexer) {
+            ((CharLexer) lexer).reset(rdr);
+        } else {
+            lexer = new CharLexer(rdr);
+        }
+        resetState();
+    }
+
+    private void resetState() {
+        if (stack.length > 1024) {
+            stack = new int[32];
+        }
+        if (containers.length > 1024) {
+            containers = new Object[32];
+            keys = new Object[32];
+        }
+        Arrays.fill(containers, null);
+        Arrays.fill(keys, null);
+        if (pending != null) {
+            if (pending.length > 1024) {
+                pending = null;
+                pendingStart = null;
+            } else {
+                Arrays.fill(pending, null);
+            }
+        }
+        pendingLength = 0;
+        depth = 0;
+        stack[0] = TOP;
+        peeked = null;
+        peekedValue = null;
+    }
+
+    /**
+     * Look at the kind of the next token, without consuming it.
+     *
+     * @throws  IOException if there is an underlying IO exception, or
+     *                      a syntax error.
+     **/
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int c = lexer.next();
+        switch (stack[depth]) {
+            case EMPTY_ARRAY:
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                stack[depth] = NONEMPTY_ARRAY;
+                return peekValue(c);
+            case NONEMPTY_ARRAY:
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                } else if (c != ',') {
+                    JsonIO.throwUnexpected(c);
+                }
+                return peekValue(lexer.next());
+            case OBJECT_KEY:
+                while (c == ',') {
+                    c = lexer.next();
+                }
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                } else if (c == '{' || c == '[') {
+                    //
+                    // JsonIO takes any value as a key, even an object or
+                    // array, so the key is read whole.  It's all kept,
+                    // whatever the projection, and an array is a List,
+                    // so that it hashes by its contents.
+                    //
+                    peeked = (c == '{') ? Token.BEGIN_OBJECT
+                                        : Token.BEGIN_ARRAY;
+                    JsonProjection p = projection;
+                    boolean primitive = primitiveArrays;
+                    projection = null;
+                    primitiveArrays = false;
+                    try {
+                        peekedValue = readValue();
+                    } finally {
+                        projection = p;
+                        primitiveArrays = primitive;
+                    }
+                    stack[depth] = OBJECT_VALUE;
+                    return peeked = Token.NAME;
+                }
+                peekValue(c);
+                if (peeked == Token.STRING) {
+                    if (keyCache == null) {
+                        peekedValue = lexer.readString(peekedChar);
+                    } else {
+                        peekedValue = lexer.readKey(peekedChar, keyCache);
+                    }
+                } else if (peeked == Token.NUMBER) {
+                    peekedValue = readPeekedNumber();
+                }
+                stack[depth] = OBJECT_VALUE;
+                return peeked = Token.NAME;
+            case OBJECT_VALUE:
+                if (c != ':') {
+                    JsonIO.throwUnexpected(c);
+                }
+                stack[depth] = OBJECT_KEY;
+                return peekValue(lexer.next());
+            default:
+                if (c == -1) {
+                    return peeked = Token.END_DOCUMENT;
+                }
+                return peekValue(c);
+        }
+    }
+
+    //
+    // Set up peeked for a value whose first character is c.
+    //
+    private Token peekValue(int c) throws IOException {
+        if (c == '{') {
+            return peeked = Token.BEGIN_OBJECT;
+        } else if (c == '[') {
+            return peeked = Token.BEGIN_ARRAY;
+        } else if (c == '"' || c == '\'') {
+            peekedChar = c;
+            return peeked = Token.STRING;
+        } else if (c == -1) {
+            JsonIO.throwUnexpected(c);
+        }
+        char ch = Character.toLowerCase((char) c);
+        if (ch == 't') {
+            lexer.readConstant("rue");
+            peekedValue = Boolean.TRUE;
+            return peeked = Token.BOOLEAN;
+        } else if (ch == 'f') {
+            lexer.readConstant("alse");
+            peekedValue = Boolean.FALSE;
+            return peeked = Token.BOOLEAN;
+        } else if (ch == 'n') {
+            lexer.readConstant("ull");
+            peekedValue = null;
+            return peeked = Token.NULL;
+        } else {
+            peekedChar = c;
+            return peeked = Token.NUMBER;
+        }
+    }
+
+    //
+    // Read the number that was peeked
+    //
+    private Number readPeekedNumber() throws IOException {
+        return rawNumbers ? lexer.readRawNumber(peekedChar)
+                          : lexer.readNumber(peekedChar);
+    }
+
+    private void expect(Token wanted) throws IOException {
+        Token t = peek();
+        if (t != wanted) {
+            throw new IOException("Expected " + wanted + " but was " + t);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) throws IOException {
+        if (depth >= maxDepth) {
+            throw new IOException("Nesting deeper than " + maxDepth);
+        }
+        if (depth + 1 == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[++depth] = scope;
+    }
+
+    /**
+     * Consume the '{' that starts an object.
+     **/
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(OBJECT_KEY);
+    }
+
+    /**
+     * Consume the '}' that ends an object.
+     **/
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    /**
+     * Consume the '[' that starts an array.
+     **/
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    /**
+     * Consume the ']' that ends an array.
+     **/
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * Is there another element in the current array or object?
+     **/
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY
+                && t != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consume the name of an object member.  JsonIO permits keys that
+     * aren't strings, like numbers; they are converted with toString().
+     * A null key gives "null".
+     *
+     * @see #nextKey()
+     **/
+    public String nextName() throws IOException {
+        return String.valueOf(nextKey());
+    }
+
+    /**
+     * Consume the name of an object member, as the type that
+     * JsonIO.readJSON would use for the key.  This is usually a String,
+     * but it can be any value, even a Map or List.
+     **/
+    public Object nextKey() throws IOException {
+        expect(Token.NAME);
+        return peekedValue;
+    }
+
+    /**
+     * Consume a string value.
+     **/
+    public String nextString() throws IOException {
+        expect(Token.STRING);
+        return lexer.readString(peekedChar);
+    }
+
+    /**
+     * Consume a string value, as a JsonString view of the input if it can
+     * be; otherwise, as a String.
+     *
+     * @see #setStringSlices(boolean)
+     **/
+    public CharSequence nextCharSequence() throws IOException {
+        expect(Token.STRING);
+        return lexer.readSlice(peekedChar);
+    }
+
+    /**
+     * Consume a number.  The result is an Integer, Long or Double,
+     * following the same rules as JsonIO.readJSON, or a JsonNumber if
+     * setRawNumbers(true) is set.
+     **/
+    public Number nextNumber() throws IOException {
+        expect(Token.NUMBER);
+        return readPeekedNumber();
+    }
+
+    /**
+     * Consume true or false.
+     **/
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return ((Boolean) peekedValue).booleanValue();
+    }
+
+    /**
+     * Consume null.
+     **/
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    /**
+     * Skip over the next value, including everything nested in it.  If
+     * the reader is positioned at the name of an object member, the name
+     * and its value are both skipped.  An object or array is passed over
+     * by following only its nesting, strings and comments, without
+     * reading its tokens, so syntax errors within it aren't detected.
+     *
+     * @throws  IOException if there is an underlying IO exception, a
+     *                      syntax error, or no value to skip.
+     **/
+    public void skipValue() throws IOException {
+        if (peek() == Token.NAME) {
+            peeked = null;
+        }
+        Token t = peek();
+        switch (t) {
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY:
+                peeked = null;
+                lexer.skipNested();
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                throw new IOException("No value to skip at " + t);
+            case STRING:
+                peeked = null;
+                lexer.skipString(peekedChar);
+                break;
+            case NUMBER:
+                peeked = null;
+                lexer.skipNumber(peekedChar);
+                break;
+            case END_DOCUMENT:
+                throw new IOException("Unexpected EOF");
+            default:
+                peeked = null;
+                break;
+        }
+    }
+
+    /**
+     * Read the next value, including everything nested in it, into the
+     * same form that JsonIO.readJSON produces.  This doesn't recurse, so
+     * it's safe on threads with small stacks, whatever the depth of the
+     * input; see setMaxDepth() to limit that.
+     *
+     * @throws  IOException if there is an underlying IO exception, a
+     *                      syntax error, or no value to read.
+     *
+     * @see JsonIO
+     **/
+    public Object readValue() throws IOException {
+        int base = depth;
+        for (;;) {
+            Object value;
+            Token t = peek();
+            switch (t) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    if (stats != null) {
+                        countOpen();
+                    }
+                    if (compactMaps) {
+                        openPending();
+                    } else {
+                        open(new HashMap());
+                    }
+                    if (projection != null) {
+                        project(base);
+                    }
+                    continue;
+                case BEGIN_ARRAY: {
+                    beginArray();
+                    if (stats != null) {
+                        countOpen();
+                    }
+                    if (primitiveArrays && peek() == Token.NUMBER) {
+                        Object arr = readNumbers();
+                        if (!(arr instanceof ArrayList)) {
+                            value = arr;
+                            break;
+                        }
+                        open(arr);
+                    } else {
+                        open(new ArrayList());
+                    }
+                    if (projection != null) {
+                        project(base);
+                    }
+                    continue;
+                }
+                case NAME:
+                    if (depth == base) {
+                        throw new IOException("Expected a value but was " + t);
+                    }
+                    keys[depth] = nextKey();
+                    if (stats != null) {
+                        stats.strings++;
+                    }
+                    if (projection != null
+                            && projections[depth] != JsonProjection.ALL
+                            && projections[depth].member(keys[depth]) == null) {
+                        skipValue();
+                    }
+                    continue;
+                case END_OBJECT:
+                case END_ARRAY:
+                    if (depth == base) {
+                        throw new IOException("Expected a value but was " + t);
+                    }
+                    value = containers[depth];
+                    if (value == PENDING) {
+                        value = closePending();
+                    }
+                    containers[depth] = null;
+                    keys[depth] = null;
+                    peeked = null;
+                    depth--;
+                    break;
+                case STRING:
+                    value = stringSlices ? nextCharSequence() : nextString();
+                    if (stats != null) {
+                        stats.values++;
+                        stats.strings++;
+                    }
+                    break;
+                case NUMBER:
+                    value = nextNumber();
+                    if (stats != null) {
+                        stats.values++;
+                        stats.numbers++;
+                    }
+                    break;
+                case BOOLEAN:
+                case NULL:
+                    peeked = null;
+                    value = peekedValue;
+                    if (stats != null) {
+                        stats.values++;
+                    }
+                    break;
+                default:    // END_DOCUMENT
+                    throw new IOException("Unexpected EOF");
+            }
+            if (depth == base) {
+                return value;
+            }
+            Object container = containers[depth];
+            if (container == PENDING) {
+                addPending(keys[depth], value);
+            } else if (container instanceof HashMap) {
+                ((HashMap) container).put(keys[depth], value);
+            } else {
+                ((ArrayList) container).add(value);
+            }
+        }
+    }
+
+    private void countOpen() {
+        stats.values++;
+        if (depth > stats.maxDepth) {
+            stats.maxDepth = depth;
+        }
+    }
+
+    //
+    // Start collecting the members of an object for a CompactMap.
+    //
+    private void openPending() {
+        open(PENDING);
+        if (pending == null) {
+            pending = new Object[32];
+            pendingStart = new int[containers.length];
+        } else if (pendingStart.length < containers.length) {
+            pendingStart = Arrays.copyOf(pendingStart, containers.length);
+        }
+        pendingStart[depth] = pendingLength;
+    }
+
+    private void addPending(Object key, Object value) {
+        if (pendingLength + 2 > pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        pending[pendingLength++] = key;
+        pending[pendingLength++] = value;
+    }
+
+    private Object closePending() {
+        int start = pendingStart[depth];
+        Object result = CompactMap.of(pending, start, pendingLength - start);
+        Arrays.fill(pending, start, pendingLength, null);
+        pendingLength = start;
+        return result;
+    }
+
+    //
+    // Record the container for the object or array we just started.
+    //
+    private void open(Object container) {
+        if (depth >= containers.length) {
+            int n = Math.max(depth + 1, containers.length * 2);
+            containers = Arrays.copyOf(containers, n);
+            keys = Arrays.copyOf(keys, n);
+        }
+        containers[depth] = container;
+    }
+
+    //
+    // Note the projection for the object or array just opened at depth.
+    // It comes from the projection of the object or array it's in, and
+    // for an object, its key.
+    //
+    private void project(int base) {
+        if (projections == null || depth >= projections.length) {
+            projections = Arrays.copyOf(
+                    (projections == null) ? new JsonProjection[0] : projections,
+                    containers.length);
+        }
+        JsonProjection p;
+        if (depth - 1 == base) {
+            p = projection;
+        } else {
+            p = projections[depth - 1];
+            if (p != JsonProjection.ALL
+                    && !(containers[depth - 1] instanceof ArrayList)) {
+                p = p.member(keys[depth - 1]);
+            }
+        }
+        projections[depth] = p;
+    }
+
+    //
+    // Read the numbers at the start of an array into a primitive array,
+    // widening from int to long to double as needed.  If the array holds
+    // nothing but numbers, the closing ']' is consumed and int[], long[]
+    // or double[] is returned.  Otherwise, the numbers read so far are
+    // returned as an ArrayList of the same Number types readJSON would
+    // give, positioned at the first value that isn't a number.  Once
+    // we've widened to double, the integers are kept as longs too, so the
+    // ArrayList has them exactly, even past 2^53.  With rawNumbers, the
+    // ArrayList holds the JsonNumbers that were read instead.
+    //
+    private Object readNumbers() throws IOException {
+        int n = 0;
+        int[] ints = new int[16];
+        long[] longs = null;
+        double[] doubles = null;
+        long[] integral = null;     // Bit set of doubles that weren't Double
+        ArrayList raw = rawNumbers ? new ArrayList() : null;
+        while (peek() == Token.NUMBER) {
+            Number v = nextNumber();
+            if (raw != null) {
+                raw.add(v);
+            }
+            if (v instanceof JsonNumber) {
+                v = ((JsonNumber) v).value();
+            }
+            if (stats != null) {
+                stats.values++;
+                stats.numbers++;
+            }
+            if (doubles == null && v instanceof Double) {
+                doubles = new double[Math.max(16, n * 2)];
+                integral = new long[doubles.length / 64 + 1];
+                long[] exact = new long[doubles.length];
+                for (int i = 0; i < n; i++) {
+                    exact[i] = (longs == null) ? ints[i] : longs[i];
+                    doubles[i] = exact[i];
+                    integral[i >> 6] |= 1L << i;
+                }
+                ints = null;
+                longs = exact;
+            } else if (doubles == null && longs == null && v instanceof Long) {
+                longs = new long[Math.max(16, n * 2)];
+                for (int i = 0; i < n; i++) {
+                    longs[i] = ints[i];
+                }
+                ints = null;
+            }
+            if (doubles != null) {
+                if (n == doubles.length) {
+                    doubles = Arrays.copyOf(doubles, n * 2);
+                    longs = Arrays.copyOf(longs, n * 2);
+                    integral = Arrays.copyOf(integral, doubles.length / 64 + 1);
+                }
+                doubles[n] = v.doubleValue();
+                if (!(v instanceof Double)) {
+                    longs[n] = v.longValue();
+                    integral[n >> 6] |= 1L << n;
+                }
+            } else if (longs != null) {
+                if (n == longs.length) {
+                    longs = Arrays.copyOf(longs, n * 2);
+                }
+                longs[n] = v.longValue();
+            } else {
+                if (n == ints.length) {
+                    ints = Arrays.copyOf(ints, n * 2);
+                }
+                ints[n] = v.intValue();
+            }
+            n++;
+        }
+        if (peek() == Token.END_ARRAY) {
+            endArray();
+            if (doubles != null) {
+                return Arrays.copyOf(doubles, n);
+            } else if (longs != null) {
+                return Arrays.copyOf(longs, n);
+            } else {
+                return Arrays.copyOf(ints, n);
+            }
+        }
+        if (raw != null) {
+            return raw;
+        }
+        ArrayList result = new ArrayList(n * 2);
+        for (int i = 0; i < n; i++) {
+            long lv;
+            if (doubles != null && (integral[i >> 6] & (1L << i)) == 0) {
+                result.add(doubles[i]);
+                continue;
+            } else if (longs != null) {
+                lv = longs[i];
+            } else {
+                lv = ints[i];
+            }
+            if (lv >= Integer.MIN_VALUE && lv <= Integer.MAX_VALUE) {
+                result.add((int) lv);
+            } else {
+                result.add(lv);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Set the deepest nesting of objects and arrays that's accepted.
+     * Deeper input causes an IOException, which bounds the memory a
+     * hostile document can make us use for nesting.  The default is no
+     * limit.
+     **/
+    public void setMaxDepth(int depth) {
+        maxDepth = depth;
+    }
+
+    /**
+     * Set whether readValue() gives arrays of numbers as primitive arrays.
+     * If true, an array holding only numbers comes back as int[], long[]
+     * or double[], using the narrowest type that holds all the elements;
+     * a 10 million element array of ints then takes 40 MB rather than
+     * about 200 MB.  Empty arrays, and arrays with any value that isn't
+     * a number, are still returned as an ArrayList.  The default is false.
+     * <p>
+     * With setRawNumbers(true) as well, an array of only numbers is still
+     * converted to a primitive array, but one that falls back to an
+     * ArrayList holds a JsonNumber for every number in it.
+     * <p>
+     * JsonIO.writeJSON accepts these primitive arrays.
+     **/
+    public void setPrimitiveArrays(boolean v) {
+        primitiveArrays = v;
+    }
+
+    /**
+     * Set whether readValue() gives string values as JsonString views of
+     * the input, rather than as Strings.  This is done for strings that
+     * are ASCII and have no escapes, when the input is a byte array,
+     * ByteBuffer or file; other strings are still given as Strings.  No
+     * characters are copied for a JsonString, and JsonWriter writes one
+     * by copying its bytes, so this is much cheaper for strings that are
+     * only compared or passed on.  The input must not be modified while
+     * the results are in use.  Object keys are always Strings.  The
+     * default is false.
+     *
+     * @see JsonString
+     **/
+    public void setStringSlices(boolean v) {
+        stringSlices = v;
+    }
+
+    /**
+     * Set whether readValue() gives objects as compact, immutable Maps,
+     * rather than HashMaps.  The members are kept in one array, in the
+     * order they appear in the input, which is also the order of
+     * iteration.  A small object takes a fraction of the memory of a
+     * HashMap, and is searched straight through; one with more than eight
+     * members also gets a hash index.  The maps are equal to the HashMaps
+     * readJSON would give, but can't be modified.  The default is false.
+     **/
+    public void setCompactMaps(boolean v) {
+        compactMaps = v;
+    }
+
+    /**
+     * Set whether numbers are given as JsonNumbers that keep their text,
+     * rather than as Integer, Long or Double.  The text is checked but
+     * not converted until the number is used, which saves the work for
+     * numbers that are only passed on; JsonWriter writes a JsonNumber's
+     * text unchanged, so no digits are lost.  This affects nextNumber()
+     * and readValue(), except that arrays made into primitive arrays by
+     * setPrimitiveArrays(true) are converted as usual.  The default is
+     * false.
+     *
+     * @see JsonNumber
+     **/
+    public void setRawNumbers(boolean v) {
+        rawNumbers = v;
+    }
+
+    /**
+     * Set the members of objects that readValue() keeps.  Members that
+     * aren't selected are skipped without being read, so nothing is
+     * allocated for them.  The projection applies to each value that
+     * readValue() reads, as if it were the whole document.  The default is
+     * null, which keeps everything.
+     *
+     * @see JsonProjection
+     **/
+    public void setProjection(JsonProjection p) {
+        projection = p;
+    }
+
+    /**
+     * Set a cache for object keys.  When a key is found in the cache, the
+     * cached String is used and no String is allocated; this makes a big
+     * difference for arrays of records, where the same keys appear over
+     * and over.  A cache may be shared between readers.  The default is
+     * no cache.
+     *
+     * @param   cache   The cache, or null for none.
+     **/
+    public void setKeyCache(JsonKeyCache cache) {
+        keyCache = cache;
+    }
+
+    //
+    // Count what's read with stats, for JsonMetrics, or stop counting if
+    // it's null.
+    //
+    void setStats(JsonStats stats) {
+        this.stats = stats;
+        lexer.stats = stats;
+    }
+
+    //
+    // Give the position just after the last byte consumed, for a
+    // reader over a ByteBuffer.
+    //
+    int bufferPosition() {
+        return ((Utf8Lexer) lexer).position();
+    }
+
+    /**
+     * Close the underlying input.
+     **/
+    public void close() throws IOException {
+        lexer.close();
+    }
+}
@@ -0,0 +1,232 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * A scanner that follows the structure of UTF-8 JSON text without parsing
+ * it.  It only keeps track of the nesting depth, and of whether it's in
+ * a string, an escape or a comment; that's enough to find where the
+ * values in an array or object begin and end, much more cheaply than a
+ * real parse.  Syntax errors are mostly not detected; they're left for
+ * whatever parses the pieces that are found.
+ * <p>
+ * The state is kept between calls to scan(), so the input can be given
+ * in as many pieces as the caller likes, split anywhere.
+ * <p>
+ * At the top level (depth 0), the scanner also reports where each value
+ * starts and, for strings, numbers and constants, where it ends, so that
+ * a stream of values can be divided up.
+ *
+ * @see ParallelArrayReader
+ * @see JsonPushParser
+ */
+final class JsonScanner {
+
+    //
+    // The events scan() can report
+    //
+    static final int NONE = 0;          // Ran out of input
+    static final int OPEN = 1;          // '{' or '['
+    static final int CLOSE = 2;         // '}' or ']'
+    static final int COMMA = 3;
+    static final int START = 4;         // First byte of a top-level scalar
+    static final int END = 5;           // End of a top-level scalar
+
+    //
+    // Lexical states
+    //
+    private static final int NORMAL = 0;
+    private static final int STRING = 1;
+    private static final int ESCAPE = 2;
+    private static final int SLASH = 3;             // Seen '/'
+    private static final int LINE_COMMENT = 4;
+    private static final int BLOCK_COMMENT = 5;
+    private static final int BLOCK_STAR = 6;        // Seen '*' in a comment
+    private static final int SCALAR = 7;            // Top-level number etc.
+
+    private final int reportDepth;
+    private int depth;
+    private int state = NORMAL;
+    private int delimiter;      // Of the string we're in
+    private int event = NONE;   // Found by the last scan()
+
+    /**
+     * Create a scanner that reports the structural characters that aren't
+     * nested deeper than reportDepth:  an OPEN that brings the depth to
+     * reportDepth or less, a CLOSE that brings it below reportDepth, and
+     * a COMMA at a depth of reportDepth or less.  START and END are
+     * always reported.
+     *
+     * @param   depth   The depth to start at, e.g. 1 if the scan starts
+     *                  just inside an array.
+     **/
+    JsonScanner(int reportDepth, int depth) {
+        this.reportDepth = reportDepth;
+        this.depth = depth;
+    }
+
+    /**
+     * Give the depth of nesting, after the last byte scanned.
+     **/
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * Scan buf[pos..limit) until the next event that's reported.  Return
+     * the position just after the event's character, or limit if there
+     * was no event, in which case lastEvent() gives NONE.  For END, the
+     * position is just after the closing quote of a string, or at the
+     * character that ends a number or constant, which isn't consumed.
+     *
+     * @throws  IOException if a comment is malformed.
+     **/
+    int scan(ByteBuffer buf, int pos, int limit) throws IOException {
+        int st = state;
+        int d = depth;
+        int delim = delimiter;
+        int report = reportDepth;
+        event = NONE;
+        try {
+            while (pos < limit) {
+                int b = buf.get(pos++);
+                switch (st) {
+                    case NORMAL:
+                        if (b == '"' || b == '\'') {
+                            delim = b;
+                            st = STRING;
+                            if (d == 0) {
+                                event = START;
+                                return pos;
+                            }
+                        } else if (b == '{' || b == '[') {
+                            if (++d <= report) {
+                                event = OPEN;
+                                return pos;
+                            }
+                        } else if (b == '}' || b == ']') {
+                            if (--d < report) {
+                                event = CLOSE;
+                                return pos;
+                            }
+                        } else if (b == ',') {
+                            if (d <= report) {
+                                event = COMMA;
+                                return pos;
+                            }
+                        } else if (b == '/') {
+                            st = SLASH;
+                        } else if (b == '#') {
+                            st = LINE_COMMENT;
+                        } else if (d == 0 && isScalar(b)) {
+                            st = SCALAR;
+                            event = START;
+                            return pos;
+                        }
+                        break;
+                    case STRING:
+                        //
+                        // Most of the input is usually in strings, so
+                        // this is the inner loop.  It's searched eight
+                        // bytes at a time, from the byte we just read.
+                        //
+                        pos = Swar.scanString(buf, pos - 1, limit, delim,
+                                              false);
+                        if (pos == limit) {
+                            break;
+                        }
+                        b = buf.get(pos++);
+                        if (b == delim) {
+                            st = NORMAL;
+                            if (d == 0) {
+                                event = END;
+                                return pos;
+                            }
+                        } else {
+                            st = ESCAPE;
+                        }
+                        break;
+                    case ESCAPE:
+                        st = STRING;
+                        break;
+                    case SLASH:
+                        if (b == '/') {
+                            st = LINE_COMMENT;
+                        } else if (b == '*') {
+                            st = BLOCK_COMMENT;
+                        } else {
+                            throw new IOException("Syntax error");
+                        }
+                        break;
+                    case LINE_COMMENT:
+                        if (b == '\n' || b == '\r') {
+                            st = NORMAL;
+                        }
+                        break;
+                    case BLOCK_COMMENT:
+                        if (b == '*') {
+                            st = BLOCK_STAR;
+                        }
+                        break;
+                    case BLOCK_STAR:
+                        if (b == '/') {
+                            st = NORMAL;
+                        } else if (b != '*') {
+                            st = BLOCK_COMMENT;
+                        }
+                        break;
+                    default:    // SCALAR
+                        if (!isScalar(b)) {
+                            st = NORMAL;
+                            event = END;
+                            return pos - 1;
+                        }
+                        break;
+                }
+            }
+            return pos;
+        } finally {
+            state = st;
+            depth = d;
+            delimiter = delim;
+        }
+    }
+
+    /**
+     * Give the event found by the last call to scan().
+     **/
+    int lastEvent() {
+        return event;
+    }
+
+    //
+    // Can b be part of a number or a constant like true?  Anything that
+    // isn't whitespace or structure is accepted here, including a stray
+    // ':', and left for the parser to reject.
+    //
+    private static boolean isScalar(int b) {
+        if (b < 0) {
+            return true;        // Non-ASCII
+        }
+        return b > ' ' && b != '{' && b != '}' && b != '[' && b != ']'
+                && b != ',' && b != '"' && b != '\'' && b != '/'
+                && b != '#';
+    }
+
+    /**
+     * Is the scanner in a top-level number or constant?  If so, the end
+     * of the input ends it.
+     **/
+    boolean inScalar() {
+        return state == SCALAR;
+    }
+
+    /**
+     * Could the input end here, outside of any value?  That is, are we
+     * at depth 0, and not in a string or an unfinished comment?
+     **/
+    boolean canEnd() {
+        return depth == 0 && (state == NORMAL || state == LINE_COMMENT);
+    }
+}
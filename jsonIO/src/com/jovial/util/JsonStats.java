@@ -0,0 +1,95 @@
+package com.jovial.util;
+
+import java.util.*;
+
+/**
+ * Counts for one document being read or written, while JsonMetrics is
+ * enabled.  JsonReader, JsonWriter and the lexers hold a JsonStats that's
+ * null when metrics are off, so all it costs them then is a null check.
+ *
+ * @see JsonMetrics
+ */
+final class JsonStats {
+
+    long values;
+    long strings;
+    long numbers;
+    long escapes;
+    int depth;
+    int maxDepth;
+
+    //
+    // Set by JsonMetrics.begin()
+    //
+    long startNanos;
+    long startAllocated;
+    Object event;       // A JFR event, or null
+
+    /**
+     * Note that an object or array has been started.
+     **/
+    void enter() {
+        if (++depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    /**
+     * Count a value that's about to be written.  For objects and arrays,
+     * the writer also calls enter() and exit().
+     **/
+    void count(Object value) {
+        values++;
+        if (value instanceof String || value instanceof JsonString) {
+            strings++;
+        } else if (value instanceof Number) {
+            numbers++;
+        } else if (value instanceof int[]) {
+            numbers += ((int[]) value).length;
+        } else if (value instanceof long[]) {
+            numbers += ((long[]) value).length;
+        } else if (value instanceof double[]) {
+            numbers += ((double[]) value).length;
+        } else if (value instanceof float[]) {
+            numbers += ((float[]) value).length;
+        }
+    }
+
+    /**
+     * Count everything in a value that has already been read, for the
+     * reader that doesn't go through JsonReader.  This walks the value
+     * with a stack of its own, since it may be nested very deeply.
+     * Escapes aren't counted.
+     **/
+    void countTree(Object root) {
+        ArrayList<Object> todo = new ArrayList<Object>();
+        ArrayList<Integer> depths = new ArrayList<Integer>();
+        todo.add(root);
+        depths.add(0);
+        while (!todo.isEmpty()) {
+            Object v = todo.remove(todo.size() - 1);
+            int d = depths.remove(depths.size() - 1);
+            count(v);
+            if (v instanceof Map) {
+                maxDepth = Math.max(maxDepth, d + 1);
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) v).entrySet()) {
+                    if (e.getKey() instanceof String) {
+                        strings++;
+                    }
+                    todo.add(e.getValue());
+                    depths.add(d + 1);
+                }
+            } else if (v instanceof List) {
+                maxDepth = Math.max(maxDepth, d + 1);
+                for (Object e : (List<?>) v) {
+                    todo.add(e);
+                    depths.add(d + 1);
+                }
+            }
+        }
+    }
+}
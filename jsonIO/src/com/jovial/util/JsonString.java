@@ -0,0 +1,94 @@
+package com.jovial.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A string value that's a view of the bytes it was parsed from, rather
+ * than a copy.  JsonReader gives these in place of Strings when
+ * setStringSlices(true) is set, for strings in byte input that are ASCII
+ * and have no escapes.  No characters are copied until toString() is
+ * called, and JsonWriter writes the bytes straight from the input.  That
+ * saves work and allocation when most strings are only looked at or
+ * passed through.
+ * <p>
+ * A JsonString is only valid as long as the input isn't modified, and
+ * it keeps the whole input reachable.  Use toString() for strings that
+ * are kept.
+ * <p>
+ * Two JsonStrings are equal if they hold the same characters, and
+ * hashCode() is the same as for the String with those characters.  A
+ * JsonString is never equal to a String; use String.contentEquals() to
+ * compare the two.
+ *
+ * @see JsonReader#setStringSlices(boolean)
+ */
+public final class JsonString implements CharSequence {
+
+    final ByteBuffer buf;
+    final int offset;
+    private final int length;
+    private int hash;
+
+    JsonString(ByteBuffer buf, int offset, int length) {
+        this.buf = buf;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        return (char) buf.get(offset + index);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(start + ", " + end);
+        }
+        return new JsonString(buf, offset + start, end - start);
+    }
+
+    /**
+     * Give a String with a copy of the characters.
+     **/
+    public String toString() {
+        byte[] b = new byte[length];
+        buf.duplicate().position(offset).get(b);
+        return new String(b, StandardCharsets.ISO_8859_1);
+    }
+
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        } else if (!(other instanceof JsonString)) {
+            return false;
+        }
+        JsonString s = (JsonString) other;
+        if (s.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf.get(offset + i) != s.buf.get(s.offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + buf.get(offset + i);
+            }
+            hash = h;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,665 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.BaseStream;
+
+/**
+ * A writer for JSON values.  It accepts the same types as
+ * JsonIO.writeJSON, and gives the same output, but it's built for speed:
+ * output is collected in an internal buffer, strings are scanned for runs
+ * that need no escaping and copied in bulk, escapes come from a lookup
+ * table, and output can be encoded straight to UTF-8 bytes for an
+ * OutputStream or ByteBuffer, with no java.io.Writer in between.
+ * <p>
+ * By default, non-ASCII characters are written as \\u escapes, like
+ * JsonIO.writeJSON.  With setEscapeNonAscii(false) they're written as
+ * they are, which is faster and smaller.
+ * <p>
+ * Output is buffered, so flush() or close() must be called when done.
+ * A JsonWriter is not thread-safe.
+ *
+ * @see JsonIO#writeJSON(Writer, Object)
+ */
+public final class JsonWriter implements Closeable, Flushable {
+
+    //
+    // For each ASCII character, 0 if it can be written as-is, or else the
+    // character that follows the backslash in its escape.  'u' means a
+    // \\u00XX escape.
+    //
+    private static final byte[] ESCAPES = new byte[128];
+
+    static {
+        for (int c = 0; c < 32; c++) {
+            ESCAPES[c] = 'u';
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\t'] = 't';
+        ESCAPES[127] = 'u';
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    //
+    // Exactly one of these is the destination
+    //
+    private Writer writer;
+    private OutputStream stream;
+    private ByteBuffer target;
+
+    //
+    // The buffer.  cbuf is used when writing to a Writer, and bbuf for
+    // UTF-8 output.
+    //
+    private char[] cbuf;
+    private byte[] bbuf;
+    private int count;
+    private char[] spareChars;      // cbuf, kept while we write bytes
+
+    private boolean escapeNonAscii = true;
+    private boolean convertToString = false;
+    private int flushInterval = 0;
+    private int sinceFlush;
+    private long written;           // Sent to the destination so far
+    private JsonStats stats = null; // For JsonMetrics
+
+    /**
+     * Create a writer that sends characters to out.
+     **/
+    public JsonWriter(Writer out) {
+        this.writer = out;
+        this.cbuf = new char[2048];
+    }
+
+    /**
+     * Create a writer that sends UTF-8 encoded bytes to out.
+     **/
+    public JsonWriter(OutputStream out) {
+        this.stream = out;
+        this.bbuf = new byte[8192];
+    }
+
+    /**
+     * Create a writer that puts UTF-8 encoded bytes into out, starting at
+     * its position.  If out fills up, an IOException is thrown.
+     **/
+    public JsonWriter(ByteBuffer out) {
+        this.target = out;
+        this.bbuf = new byte[8192];
+    }
+
+    /**
+     * Start writing to out, in place of the current destination.  Output
+     * that's still buffered for the old destination is discarded, so
+     * flush() first to keep it; the old destination isn't closed.  The
+     * writer's buffers and options are kept, so a writer that's reset for
+     * each of many small documents allocates much less than a new writer
+     * for each.
+     **/
+    public void reset(Writer out) {
+        clear();
+        writer = out;
+        cbuf = (spareChars != null) ? spareChars : new char[2048];
+        spareChars = null;
+    }
+
+    /**
+     * Start writing UTF-8 encoded bytes to out.
+     *
+     * @see #reset(Writer)
+     **/
+    public void reset(OutputStream out) {
+        clear();
+        stream = out;
+        if (bbuf == null) {
+            bbuf = new byte[8192];
+        }
+    }
+
+    /**
+     * Start putting UTF-8 encoded bytes into out, starting at its
+     * position.
+     *
+     * @see #reset(Writer)
+     **/
+    public void reset(ByteBuffer out) {
+        clear();
+        target = out;
+        if (bbuf == null) {
+            bbuf = new byte[8192];
+        }
+    }
+
+    //
+    // Forget the destination and any buffered output.  cbuf being null
+    // means we're writing bytes, so it's put aside.
+    //
+    private void clear() {
+        writer = null;
+        stream = null;
+        target = null;
+        count = 0;
+        if (cbuf != null) {
+            spareChars = cbuf;
+            cbuf = null;
+        }
+    }
+
+    /**
+     * Set whether characters outside of ASCII are written as \\u escapes.
+     * The default is true, which gives the same output as JsonIO.writeJSON.
+     **/
+    public void setEscapeNonAscii(boolean v) {
+        escapeNonAscii = v;
+    }
+
+    /**
+     * Set whether values of unknown types are written as strings, using
+     * toString().  If false, unknown types cause an IOException.  The
+     * default is false.
+     * <p>
+     * An Iterable that isn't a List, an Iterator, a Stream or a Supplier
+     * is only written lazily, as the values it gives, when this is false.
+     * When it's true, such values are written with toString(), as they
+     * always have been, so a Set becomes a string like "[a, b]".
+     **/
+    public void setConvertToString(boolean v) {
+        convertToString = v;
+    }
+
+    /**
+     * Set how often output is flushed while writing an Iterable, Iterator
+     * or Stream:  after every n elements, the buffer is sent to the
+     * destination and the destination is flushed, so that a reader at the
+     * other end sees a long array arrive a piece at a time.  The count is
+     * kept across all such sources being written.  0, the default, means
+     * the buffer is only sent when it's full.
+     **/
+    public void setFlushInterval(int n) {
+        flushInterval = n;
+        sinceFlush = 0;
+    }
+
+    /**
+     * Write a JSON value.  The value must correspond to the JSON type as
+     * described in the JsonIO class documentation.
+     *
+     * @throws  IOException if there is an underlying IO exception, or if
+     *                      value contains an invalid type.
+     *
+     * @see JsonIO
+     **/
+    public void write(Object value) throws IOException {
+        if (stats != null) {
+            stats.count(value);
+        }
+        if (value == null) {
+            writeAscii("null");
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof JsonString) {
+            writeSlice((JsonString) value);
+        } else if (value instanceof Integer || value instanceof Long
+                   || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof JsonNumber) {
+            writeAscii(((JsonNumber) value).text());
+        } else if (value instanceof Number) {
+            writeAscii(value.toString());
+        } else if (value instanceof Boolean) {
+            writeAscii(((Boolean) value).booleanValue() ? "true" : "false");
+        } else if (value instanceof Map) {
+            writeMap((Map) value);
+        } else if (value instanceof List) {
+            writeList((List) value);
+        } else if (value instanceof Object[]) {
+            Object[] arr = (Object[]) value;
+            if (stats != null) {
+                stats.enter();
+            }
+            writeRaw('[');
+            for (int i = 0; i < arr.length; i++) {
+                if (i > 0) {
+                    writeRaw(',');
+                }
+                write(arr[i]);
+            }
+            writeRaw(']');
+            if (stats != null) {
+                stats.exit();
+            }
+        } else if (value instanceof int[]) {
+            int[] arr = (int[]) value;
+            writeRaw('[');
+            for (int i = 0; i < arr.length; i++) {
+                if (i > 0) {
+                    writeRaw(',');
+                }
+                writeLong(arr[i]);
+            }
+            writeRaw(']');
+        } else if (value instanceof long[]) {
+            long[] arr = (long[]) value;
+            writeRaw('[');
+            for (int i = 0; i < arr.length; i++) {
+                if (i > 0) {
+                    writeRaw(',');
+                }
+                writeLong(arr[i]);
+            }
+            writeRaw(']');
+        } else if (value instanceof double[]) {
+            double[] arr = (double[]) value;
+            writeRaw('[');
+            for (int i = 0; i < arr.length; i++) {
+                if (i > 0) {
+                    writeRaw(',');
+                }
+                writeAscii(Double.toString(arr[i]));
+            }
+            writeRaw(']');
+        } else if (value instanceof float[]) {
+            float[] arr = (float[]) value;
+            writeRaw('[');
+            for (int i = 0; i < arr.length; i++) {
+                if (i > 0) {
+                    writeRaw(',');
+                }
+                writeAscii(Float.toString(arr[i]));
+            }
+            writeRaw(']');
+        } else if (convertToString) {
+            //
+            // As before lazy values were written, anything else is
+            // written with toString(), including Sets and other
+            // Iterables.
+            //
+            writeString(value.toString());
+        } else if (value instanceof Iterable && !(value instanceof Path)) {
+            writeLazy(value, ((Iterable) value).iterator());
+        } else if (value instanceof Iterator) {
+            writeLazy(value, (Iterator) value);
+        } else if (value instanceof BaseStream) {
+            writeLazy(value, ((BaseStream) value).iterator());
+        } else if (value instanceof Supplier) {
+            write(((Supplier) value).get());
+        } else {
+            throw invalidType(value);
+        }
+    }
+
+    private static IOException invalidType(Object value) {
+        return new IOException("Invalid type " + value.getClass() + " for "
+                               + value);
+    }
+
+    //
+    // Write the elements of it, which come from source, as an array, as
+    // they're produced.  A Path is an Iterable whose elements are Paths
+    // that iterate over themselves; source is rejected if it's like that,
+    // rather than recursing forever.  Iterables are only asked for one
+    // iterator, since some, like a DirectoryStream, only give one.
+    //
+    private void writeLazy(Object source, Iterator it) throws IOException {
+        Object next = null;
+        boolean more = it.hasNext();
+        if (more) {
+            next = it.next();
+            if (next == source) {
+                throw invalidType(source);
+            }
+        }
+        if (stats != null) {
+            stats.enter();
+        }
+        writeRaw('[');
+        boolean first = true;
+        while (more) {
+            if (first) {
+                first = false;
+            } else {
+                writeRaw(',');
+                next = it.next();
+            }
+            write(next);
+            if (flushInterval > 0 && ++sinceFlush >= flushInterval) {
+                sinceFlush = 0;
+                flush();
+            }
+            more = it.hasNext();
+        }
+        writeRaw(']');
+        if (stats != null) {
+            stats.exit();
+        }
+    }
+
+    private void writeMap(Map map) throws IOException {
+        if (stats != null) {
+            stats.enter();
+        }
+        writeRaw('{');
+        boolean first = true;
+        for (Iterator it = map.entrySet().iterator(); it.hasNext();) {
+            if (first) {
+                first = false;
+            } else {
+                writeRaw(',');
+            }
+            Map.Entry ent = (Map.Entry) it.next();
+            Object key = ent.getKey();
+            if (key instanceof String) {
+                if (stats != null) {
+                    stats.strings++;
+                }
+                writeString((String) key);
+            } else {
+                write(key);
+            }
+            writeRaw(':');
+            write(ent.getValue());
+        }
+        writeRaw('}');
+        if (stats != null) {
+            stats.exit();
+        }
+    }
+
+    private void writeList(List list) throws IOException {
+        if (stats != null) {
+            stats.enter();
+        }
+        writeRaw('[');
+        if (list instanceof RandomAccess) {
+            int n = list.size();
+            for (int i = 0; i < n; i++) {
+                if (i > 0) {
+                    writeRaw(',');
+                }
+                write(list.get(i));
+            }
+        } else {
+            boolean first = true;
+            for (Iterator it = list.iterator(); it.hasNext();) {
+                if (first) {
+                    first = false;
+                } else {
+                    writeRaw(',');
+                }
+                write(it.next());
+            }
+        }
+        writeRaw(']');
+        if (stats != null) {
+            stats.exit();
+        }
+    }
+
+    //
+    // Write a string, with its quotes and escapes.
+    //
+    private void writeString(String s) throws IOException {
+        writeRaw('"');
+        int len = s.length();
+        int start = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 128) {
+                if (ESCAPES[c] == 0) {
+                    continue;
+                }
+            } else if (!escapeNonAscii && !Character.isSurrogate(c)) {
+                continue;
+            } else if (!escapeNonAscii && Character.isHighSurrogate(c)
+                       && i + 1 < len
+                       && Character.isLowSurrogate(s.charAt(i + 1))) {
+                i++;
+                continue;
+            }
+            writeRun(s, start, i);
+            writeEscape(c);
+            start = i + 1;
+        }
+        writeRun(s, start, len);
+        writeRaw('"');
+    }
+
+    //
+    // Write a string that's a slice of ASCII input, straight from the
+    // input's bytes.
+    //
+    private void writeSlice(JsonString s) throws IOException {
+        writeRaw('"');
+        ByteBuffer in = s.buf;
+        int end = s.offset + s.length();
+        for (int i = s.offset; i < end; i++) {
+            int c = in.get(i);
+            if (ESCAPES[c] != 0) {
+                writeEscape((char) c);
+            } else {
+                writeRaw((char) c);
+            }
+        }
+        writeRaw('"');
+    }
+
+    private void writeEscape(char c) throws IOException {
+        if (stats != null) {
+            stats.escapes++;
+        }
+        ensure(6);
+        int e = (c < 128) ? ESCAPES[c] : 'u';
+        if (e == 'u') {
+            put('\\');
+            put('u');
+            put(HEX[(c >> 12) & 0xf]);
+            put(HEX[(c >> 8) & 0xf]);
+            put(HEX[(c >> 4) & 0xf]);
+            put(HEX[c & 0xf]);
+        } else {
+            put('\\');
+            put((char) e);
+        }
+    }
+
+    //
+    // Write s[start..end), which needs no escaping.
+    //
+    private void writeRun(String s, int start, int end) throws IOException {
+        if (cbuf != null) {
+            while (start < end) {
+                if (count == cbuf.length) {
+                    drain();
+                }
+                int n = Math.min(end - start, cbuf.length - count);
+                s.getChars(start, start + n, cbuf, count);
+                count += n;
+                start += n;
+            }
+            return;
+        }
+        //
+        // UTF-8.  Only ASCII or properly paired surrogates get here.
+        //
+        byte[] b = bbuf;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (count + 4 > b.length) {
+                drain();
+            }
+            if (c < 0x80) {
+                b[count++] = (byte) c;
+            } else if (c < 0x800) {
+                b[count++] = (byte) (0xc0 | (c >> 6));
+                b[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[count++] = (byte) (0xf0 | (cp >> 18));
+                b[count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                b[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                b[count++] = (byte) (0x80 | (cp & 0x3f));
+            } else {
+                b[count++] = (byte) (0xe0 | (c >> 12));
+                b[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[count++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    //
+    // Write an integer without making a String
+    //
+    private void writeLong(long v) throws IOException {
+        if (v == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        ensure(20);
+        if (v < 0) {
+            put('-');
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) {
+            digits++;
+        }
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            char d = (char) ('0' + (v % 10));
+            if (cbuf != null) {
+                cbuf[i] = d;
+            } else {
+                bbuf[i] = (byte) d;
+            }
+            v /= 10;
+        }
+        count = end;
+    }
+
+    //
+    // Write a string that's known to be ASCII with nothing to escape
+    //
+    private void writeAscii(String s) throws IOException {
+        int len = s.length();
+        if (cbuf != null) {
+            writeRun(s, 0, len);
+            return;
+        }
+        for (int i = 0; i < len; i++) {
+            if (count == bbuf.length) {
+                drain();
+            }
+            bbuf[count++] = (byte) s.charAt(i);
+        }
+    }
+
+    //
+    // Write ASCII bytes, like the text of a JsonNumber.
+    //
+    private void writeAscii(byte[] b) throws IOException {
+        for (int i = 0; i < b.length; i++) {
+            ensure(1);
+            put((char) b[i]);
+        }
+    }
+
+    //
+    // Write a single ASCII character, like the newline between records
+    // in JSON Lines.
+    //
+    void writeRaw(char c) throws IOException {
+        ensure(1);
+        put(c);
+    }
+
+    //
+    // Put an ASCII character in the buffer, which must have room.
+    //
+    private void put(char c) {
+        if (cbuf != null) {
+            cbuf[count++] = c;
+        } else {
+            bbuf[count++] = (byte) c;
+        }
+    }
+
+    private void ensure(int n) throws IOException {
+        int size = (cbuf != null) ? cbuf.length : bbuf.length;
+        if (count + n > size) {
+            drain();
+        }
+    }
+
+    //
+    // Count what's written with stats, for JsonMetrics, or stop counting
+    // if it's null.
+    //
+    void setStats(JsonStats stats) {
+        this.stats = stats;
+    }
+
+    //
+    // Give the number of bytes, or characters for a Writer, sent to the
+    // destination so far.
+    //
+    long written() {
+        return written;
+    }
+
+    /**
+     * Send what's in the buffer to the destination, without flushing the
+     * destination.
+     **/
+    void drain() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (writer != null) {
+            writer.write(cbuf, 0, count);
+        } else if (stream != null) {
+            stream.write(bbuf, 0, count);
+        } else {
+            try {
+                target.put(bbuf, 0, count);
+            } catch (BufferOverflowException ex) {
+                throw new IOException("ByteBuffer full");
+            }
+        }
+        written += count;
+        count = 0;
+    }
+
+    /**
+     * Send buffered output to the destination, and flush it.
+     **/
+    public void flush() throws IOException {
+        drain();
+        if (writer != null) {
+            writer.flush();
+        } else if (stream != null) {
+            stream.flush();
+        }
+    }
+
+    /**
+     * Flush, and close the destination.
+     **/
+    public void close() throws IOException {
+        flush();
+        if (writer != null) {
+            writer.close();
+        } else if (stream != null) {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Parses a document whose top-level value is an array, with the elements
+ * parsed in parallel.  A JsonScanner finds the commas between elements,
+ * and the elements are gathered into chunks of a reasonable size; each
+ * chunk is parsed as soon as it's found, while the scan carries on.  The
+ * scan is sequential, but it's several times faster than a parse, so
+ * the work scales with the number of threads.
+ *
+ * @see JsonIO#readJSONParallel(ByteBuffer, ForkJoinPool)
+ */
+@SuppressWarnings("unchecked")
+final class ParallelArrayReader {
+
+    //
+    // Chunks are at least this big, so that tiny elements aren't each a
+    // task of their own.
+    //
+    private static final long MIN_CHUNK = 1L << 16;
+
+    //
+    // The scan looks at the input this much at a time, since a file is
+    // mapped in pieces.
+    //
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final ByteSource src;
+    private final long size;
+    private final long chunkSize;
+    private long end;           // Just after the value, once it's read
+
+    ParallelArrayReader(ByteSource src, int parallelism) throws IOException {
+        this.src = src;
+        this.size = src.size();
+        this.chunkSize = Math.max(MIN_CHUNK, size / (parallelism * 8L));
+    }
+
+    /**
+     * Give the offset just after the value that was read.
+     **/
+    long end() {
+        return end;
+    }
+
+    /**
+     * Read the array in src, with its elements parsed in parallel on
+     * pool.  If the value in src isn't an array, return null.  If a
+     * chunk fails, the chunks that haven't started are dropped, and the
+     * ones that have are waited for, before the exception is thrown.
+     **/
+    ArrayList read(final ForkJoinPool pool) throws IOException {
+        long start = arrayStart();
+        if (start == -1) {
+            return null;
+        }
+        final ArrayList<Future> tasks = new ArrayList<Future>();
+        final AtomicBoolean stop = new AtomicBoolean();
+        boolean done = false;
+        try {
+            split(start, new Chunks() {
+                void chunk(final long s, final long e, final boolean only) {
+                    tasks.add(pool.submit(new Callable() {
+                        public Object call() throws IOException {
+                            if (stop.get()) {
+                                return null;
+                            }
+                            return parse(src.chunk(s, e), only);
+                        }
+                    }));
+                }
+            });
+            ArrayList result = null;
+            for (int i = 0; i < tasks.size(); i++) {
+                List elements = (List) JsonLines.await(tasks.get(i));
+                if (result == null) {
+                    result = new ArrayList(elements.size() * tasks.size());
+                }
+                result.addAll(elements);
+            }
+            done = true;
+            return result;
+        } finally {
+            if (!done) {
+                stop.set(true);
+                JsonLines.awaitAll(tasks);
+            }
+        }
+    }
+
+    /**
+     * Give the elements of the array in src as a parallel Stream.  The
+     * input is scanned to split it into chunks before this returns, but
+     * the elements are parsed as the stream is consumed.  A syntax error
+     * in an element is thrown as an UncheckedIOException.
+     *
+     * @throws  IOException if the value isn't an array, or its structure
+     *                      is broken.
+     **/
+    Stream<Object> stream() throws IOException {
+        long start = arrayStart();
+        if (start == -1) {
+            throw new IOException("Not an array");
+        }
+        final ArrayList<long[]> chunks = new ArrayList<long[]>();
+        split(start, new Chunks() {
+            void chunk(long s, long e, boolean only) {
+                chunks.add(new long[] { s, e, only ? 1 : 0 });
+            }
+        });
+        return chunks.parallelStream().flatMap(
+            new Function<long[], Stream<Object>>() {
+                public Stream<Object> apply(long[] c) {
+                    try {
+                        ByteBuffer buf = src.chunk(c[0], c[1]);
+                        return parse(buf, c[2] != 0).stream();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            });
+    }
+
+    //
+    // If the value starts with '[', give the offset just after it;
+    // otherwise, give -1.
+    //
+    private long arrayStart() throws IOException {
+        Utf8Lexer lexer
+            = new Utf8Lexer(src.chunk(0, Math.min(size, WINDOW_SIZE)));
+        if (lexer.next() != '[') {
+            return -1;
+        }
+        return lexer.position();
+    }
+
+    private static abstract class Chunks {
+        //
+        // Called with each chunk in [s, e).  only is true if this is the
+        // array's only chunk.
+        //
+        abstract void chunk(long s, long e, boolean only) throws IOException;
+    }
+
+    //
+    // Find the chunks of the array whose elements start at start, and give
+    // them to chunks in order.  Sets end.
+    //
+    private void split(long start, Chunks chunks) throws IOException {
+        JsonScanner scanner = new JsonScanner(1, 1);
+        long chunkStart = start;
+        long windowBase = start;
+        while (windowBase < size) {
+            long windowEnd = Math.min(size, windowBase + WINDOW_SIZE);
+            ByteBuffer window = src.chunk(windowBase, windowEnd);
+            int limit = window.limit();
+            int pos = 0;
+            while (pos < limit) {
+                pos = scanner.scan(window, pos, limit);
+                int event = scanner.lastEvent();
+                long offset = windowBase + pos;
+                if (event == JsonScanner.COMMA) {
+                    if (offset - chunkStart >= chunkSize) {
+                        chunks.chunk(chunkStart, offset - 1, false);
+                        chunkStart = offset;
+                    }
+                } else if (event == JsonScanner.CLOSE) {
+                    if (window.get(pos - 1) != ']') {
+                        JsonIO.throwUnexpected('}');
+                    }
+                    chunks.chunk(chunkStart, offset - 1, chunkStart == start);
+                    end = offset;
+                    return;
+                }
+            }
+            windowBase = windowEnd;
+        }
+        throw new IOException("Unexpected EOF");
+    }
+
+    //
+    // Parse the elements in a chunk, which are separated by commas.  If
+    // only is true, the chunk may be empty.
+    //
+    private static List parse(ByteBuffer buf, boolean only)
+            throws IOException
+    {
+        Utf8Lexer lexer = new Utf8Lexer(buf);
+        JsonReader rdr = new JsonReader(lexer);
+        ArrayList result = new ArrayList();
+        if (only && rdr.peek() == JsonReader.Token.END_DOCUMENT) {
+            return result;
+        }
+        for (;;) {
+            result.add(rdr.readValue());
+            int c = lexer.next();
+            if (c == -1) {
+                return result;
+            } else if (c != ',') {
+                JsonIO.throwUnexpected(c);
+            }
+        }
+    }
+}
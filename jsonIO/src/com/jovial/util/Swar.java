@@ -0,0 +1,89 @@
+package com.jovial.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Scanning of UTF-8 input eight bytes at a time, with ordinary long
+ * arithmetic ("SIMD within a register").  Most of the bytes of a typical
+ * document are the insides of strings, which only need to be searched
+ * for the closing quote, a backslash or a non-ASCII byte; and runs of
+ * spaces for indentation.  Both can be classified a long at a time,
+ * without a branch per byte.
+ * <p>
+ * The longs are read little-endian whatever buf's byte order is, so the
+ * first byte in the input is the lowest byte of the long, and the first
+ * match is found with numberOfTrailingZeros.
+ * <p>
+ * The Vector API would let this use 32 or 64 byte registers, but it's
+ * still an incubator module that has to be added on the command line to
+ * compile and run.  Eight bytes at a time gets most of the gain for the
+ * short strings JSON mostly holds, with no dependency.
+ *
+ * @see Utf8Lexer
+ * @see JsonScanner
+ */
+final class Swar {
+
+    private static final VarHandle LONGS
+        = MethodHandles.byteBufferViewVarHandle(long[].class,
+                                                ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long BACKSLASHES = ONES * '\\';
+    private static final long SPACES = ONES * ' ';
+
+    private Swar() {
+    }
+
+    //
+    // Set the high bit of each byte of x that's zero.  A byte above a
+    // zero byte can be flagged wrongly, because of the borrow, but never
+    // one below it, so the lowest flag is always right.
+    //
+    private static long zeros(long x) {
+        return (x - ONES) & ~x & HIGHS;
+    }
+
+    /**
+     * Give the position of the first byte in buf[pos..limit) that's the
+     * delimiter or a backslash, or if nonAscii, a byte of a non-ASCII
+     * character.  Return limit if there is none.
+     **/
+    static int scanString(ByteBuffer buf, int pos, int limit, int delimiter,
+                          boolean nonAscii)
+    {
+        long delims = ONES * delimiter;
+        long high = nonAscii ? HIGHS : 0;
+        while (pos + 8 <= limit) {
+            long x = (long) LONGS.get(buf, pos);
+            long m = zeros(x ^ delims) | zeros(x ^ BACKSLASHES) | (x & high);
+            if (m != 0) {
+                return pos + (Long.numberOfTrailingZeros(m) >>> 3);
+            }
+            pos += 8;
+        }
+        while (pos < limit) {
+            int b = buf.get(pos);
+            if (b == delimiter || b == '\\' || (nonAscii && b < 0)) {
+                return pos;
+            }
+            pos++;
+        }
+        return limit;
+    }
+
+    /**
+     * Skip whole groups of eight spaces starting at pos, and give the
+     * position after them.  The rest is left for the caller.
+     **/
+    static int skipSpaces(ByteBuffer buf, int pos, int limit) {
+        while (pos + 8 <= limit && (long) LONGS.get(buf, pos) == SPACES) {
+            pos += 8;
+        }
+        return pos;
+    }
+}
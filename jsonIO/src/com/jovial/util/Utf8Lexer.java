@@ -0,0 +1,493 @@
+package com.jovial.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A JsonLexer that works directly on UTF-8 encoded bytes.  The input is
+ * walked with an int cursor into a ByteBuffer; bytes are only decoded
+ * into characters when a String is built.  Everything outside of strings
+ * in JSON is ASCII, so structural characters, numbers and constants never
+ * need decoding.
+ * <p>
+ * The input is the whole of a ByteBuffer (which may wrap a byte array),
+ * an InputStream that's read into an internal buffer, or a file that's
+ * mapped into memory a window at a time.
+ *
+ * @see JsonReader
+ */
+class Utf8Lexer extends JsonLexer {
+
+    private ByteBuffer buf;
+    private int pos;
+    private int limit;
+    private InputStream in;         // null if all input is in buf
+    private byte[] inBuf;           // Backs buf when reading from in
+    private FileChannel channel;    // null unless we're mapping a file
+    private long channelSize;
+    private long windowBase;        // File offset of buf's byte 0
+
+    //
+    // The size of the windows we map a file with.  A MappedByteBuffer
+    // can't be more than 2 GB, so bigger files are walked in windows.
+    //
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    //
+    // Scratch space for decoding strings
+    //
+    private char[] chars = new char[256];
+
+    /**
+     * Lex the bytes from buf's position to its limit.  buf's position
+     * is not changed.
+     **/
+    Utf8Lexer(ByteBuffer buf) {
+        this.buf = buf;
+        this.pos = buf.position();
+        this.limit = buf.limit();
+    }
+
+    Utf8Lexer(InputStream in) {
+        this.in = in;
+        this.inBuf = new byte[8192];
+        this.buf = ByteBuffer.wrap(inBuf);
+    }
+
+    /**
+     * Lex the contents of a file, by mapping it into memory.  The file's
+     * bytes are parsed in place; the only copies are the Strings that
+     * are built.
+     **/
+    Utf8Lexer(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.channelSize = channel.size();
+        this.buf = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Start over on the bytes from buf's position to its limit, keeping
+     * our scratch space.
+     **/
+    void reset(ByteBuffer buf) {
+        this.buf = buf;
+        this.pos = buf.position();
+        this.limit = buf.limit();
+        this.in = null;
+        this.channel = null;
+        this.channelSize = 0;
+        this.windowBase = 0;
+        trimScratch();
+    }
+
+    /**
+     * Start over on the bytes from in, keeping our scratch space and
+     * input buffer.
+     **/
+    void reset(InputStream in) {
+        if (inBuf == null) {
+            inBuf = new byte[8192];
+        }
+        reset(ByteBuffer.wrap(inBuf));
+        this.in = in;
+        this.limit = 0;
+    }
+
+    protected void trimScratch() {
+        super.trimScratch();
+        if (chars.length > 65536) {
+            chars = new char[256];
+        }
+    }
+
+    /**
+     * Give the position in the buffer just after the last byte consumed.
+     * This is only meaningful when the input is a ByteBuffer.
+     **/
+    int position() {
+        return pos;
+    }
+
+    /**
+     * Move the cursor to the given position in the buffer.  This is only
+     * meaningful when the input is a ByteBuffer.
+     **/
+    void seek(int position) {
+        pos = position;
+    }
+
+    //
+    // Refill the buffer.  Return false on EOF.
+    //
+    private boolean fill() throws IOException {
+        if (channel != null) {
+            return mapNextWindow();
+        } else if (in == null) {
+            return false;
+        }
+        for (;;) {
+            int n = in.read(inBuf, 0, inBuf.length);
+            if (n == -1) {
+                return false;
+            } else if (n > 0) {
+                pos = 0;
+                limit = n;
+                return true;
+            }
+        }
+    }
+
+    //
+    // Map the part of the file that follows the current window.  The
+    // lexer never looks behind its cursor, so a token can span windows.
+    //
+    private boolean mapNextWindow() throws IOException {
+        long base = windowBase + limit;
+        if (base >= channelSize) {
+            return false;
+        }
+        long size = Math.min(WINDOW_SIZE, channelSize - base);
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, base, size);
+        windowBase = base;
+        pos = 0;
+        limit = (int) size;
+        return true;
+    }
+
+    //
+    // Read one byte as an unsigned value, with no skipping of whitespace,
+    // or -1 on EOF.
+    //
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buf.get(pos++) & 0xff;
+    }
+
+    int next() throws IOException {
+        for (;;) {
+            if (pos >= limit && !fill()) {
+                return -1;
+            }
+            int b = buf.get(pos++);
+            if (b == '\n') {
+                //
+                // Indentation can be long, so spaces after a newline are
+                // skipped eight at a time.
+                //
+                pos = Swar.skipSpaces(buf, pos, limit);
+            } else if (b == ' ' || b == '\r' || b == '\t') {
+                continue;
+            } else if (b == '/') {
+                skipSlashComment();
+            } else if (b == '#') {
+                skipToEOLN();
+            } else if (b > ' ') {
+                return b;
+            } else if (b >= 0) {
+                if (!Character.isWhitespace((char) b)) {
+                    return b;
+                }
+            } else {
+                //
+                // Non-ASCII.  This is an error unless it's one of the
+                // Unicode space characters.
+                //
+                int cp = decode(b & 0xff);
+                if (!Character.isWhitespace(cp)) {
+                    return cp;
+                }
+            }
+        }
+    }
+
+    private void skipSlashComment() throws IOException {
+        int c = read();
+        if (c == '/') {
+            skipToEOLN();
+        } else if (c == '*') {
+            boolean starSeen = false;
+            for (;;) {
+                c = read();
+                if (c == -1) {
+                    throw new IOException("Unexpected EOF");
+                } else if (starSeen && c == '/') {
+                    return;
+                }
+                starSeen = c == '*';
+            }
+        } else {
+            throw new IOException("Syntax error");
+        }
+    }
+
+    private void skipToEOLN() throws IOException {
+        for (;;) {
+            int c = read();
+            if (c == -1 || c == '\n' || c == '\r') {
+                return;
+            }
+        }
+    }
+
+    //
+    // Decode a multi-byte UTF-8 sequence whose first byte is b, and return
+    // the code point.
+    //
+    private int decode(int b) throws IOException {
+        if ((b & 0xe0) == 0xc0) {
+            return ((b & 0x1f) << 6) | continuation();
+        } else if ((b & 0xf0) == 0xe0) {
+            int c = (b & 0x0f) << 12;
+            c |= continuation() << 6;
+            return c | continuation();
+        } else if ((b & 0xf8) == 0xf0) {
+            int c = (b & 0x07) << 18;
+            c |= continuation() << 12;
+            c |= continuation() << 6;
+            return c | continuation();
+        } else {
+            throw new IOException("Invalid UTF-8 byte 0x"
+                                  + Integer.toHexString(b));
+        }
+    }
+
+    private int continuation() throws IOException {
+        int b = read();
+        if (b == -1) {
+            throw new IOException("Unexpected EOF");
+        } else if ((b & 0xc0) != 0x80) {
+            throw new IOException("Invalid UTF-8 byte 0x"
+                                  + Integer.toHexString(b));
+        }
+        return b & 0x3f;
+    }
+
+    //
+    // A string that's ASCII, with no escapes, and wholly in a buffer with
+    // an array is made straight from the array.  Strings are kept as
+    // Latin-1 when they can be, so that's one copy, with no decoding.
+    //
+    String readString(int delimiter) throws IOException {
+        int end = Swar.scanString(buf, pos, limit, delimiter, true);
+        if (end < limit && buf.get(end) == delimiter && buf.hasArray()) {
+            String result = new String(buf.array(), buf.arrayOffset() + pos,
+                                       end - pos, StandardCharsets.ISO_8859_1);
+            pos = end + 1;
+            return result;
+        }
+        int n = decodeString(delimiter);
+        return new String(chars, 0, n);
+    }
+
+    String readKey(int delimiter, JsonKeyCache cache) throws IOException {
+        int n = decodeString(delimiter);
+        return cache.get(chars, 0, n);
+    }
+
+    //
+    // A string that's ASCII, with no escapes, and wholly in the buffer is
+    // given as a slice of the buffer.  Input from a stream is never
+    // sliced, since inBuf is reused.
+    //
+    CharSequence readSlice(int delimiter) throws IOException {
+        if (in == null) {
+            int end = Swar.scanString(buf, pos, limit, delimiter, true);
+            if (end < limit && buf.get(end) == delimiter) {
+                JsonString result = new JsonString(buf, pos, end - pos);
+                pos = end + 1;
+                return result;
+            }
+        }
+        return readString(delimiter);
+    }
+
+    //
+    // Decode the body of a string into chars, and return its length.  Runs
+    // of plain ASCII are found eight bytes at a time, and just widened.
+    //
+    private int decodeString(int delimiter) throws IOException {
+        char[] cb = chars;
+        int n = 0;
+        for (;;) {
+            int end = Swar.scanString(buf, pos, limit, delimiter, true);
+            if (n + (end - pos) + 2 > cb.length) {
+                cb = chars = Arrays.copyOf(cb, Math.max(cb.length * 2,
+                                                        n + (end - pos) + 2));
+            }
+            while (pos < end) {
+                cb[n++] = (char) buf.get(pos++);
+            }
+            if (pos >= limit && !fill()) {
+                throw new IOException("Unexpected EOF");
+            }
+            int b = buf.get(pos++);
+            if (b == delimiter) {
+                return n;
+            }
+            if (n + 2 > cb.length) {
+                cb = chars = Arrays.copyOf(cb, cb.length * 2);
+            }
+            if (b == '\\') {
+                cb[n++] = readEscape();
+            } else if (b >= 0) {
+                cb[n++] = (char) b;
+            } else {
+                int cp = decode(b & 0xff);
+                if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    cb[n++] = (char) cp;
+                } else {
+                    cb[n++] = Character.highSurrogate(cp);
+                    cb[n++] = Character.lowSurrogate(cp);
+                }
+            }
+        }
+    }
+
+    //
+    // Read an escape sequence after the backslash
+    //
+    private char readEscape() throws IOException {
+        if (stats != null) {
+            stats.escapes++;
+        }
+        int c = read();
+        if (c == -1) {
+            throw new IOException("Unexpected EOF");
+        } else if (c == 'u' || c == 'x') {
+            int digits = (c == 'u') ? 4 : 2;
+            int val = 0;
+            for (int i = 0; i < digits; i++) {
+                val = val * 16 + hexValue(read());
+            }
+            return (char) val;
+        } else if (c < 0x80) {
+            return unescape(c);
+        } else {
+            //
+            // A backslash before a non-ASCII character just gives the
+            // character, like JsonIO.readJSON(Reader).
+            //
+            int cp = decode(c);
+            if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                throw new IOException("Invalid escape");
+            }
+            return (char) cp;
+        }
+    }
+
+    void skipString(int delimiter) throws IOException {
+        for (;;) {
+            pos = Swar.scanString(buf, pos, limit, delimiter, false);
+            if (pos < limit) {
+                if (buf.get(pos++) == delimiter) {
+                    return;
+                }
+                readEscape();
+            } else if (!fill()) {
+                throw new IOException("Unexpected EOF");
+            }
+        }
+    }
+
+    void skipNested() throws IOException {
+        int depth = 1;
+        for (;;) {
+            while (pos < limit) {
+                int b = buf.get(pos++);
+                if (b == '"' || b == '\'') {
+                    //
+                    // Fast path for a string that ends in the buffer.
+                    // Escapes don't need decoding; we only need to make
+                    // sure an escaped delimiter doesn't end the string.
+                    //
+                    int i = pos;
+                    for (;;) {
+                        i = Swar.scanString(buf, i, limit, b, false);
+                        if (i >= limit) {
+                            skipString(b);
+                            break;
+                        } else if (buf.get(i) == b) {
+                            pos = i + 1;
+                            break;
+                        }
+                        i += 2;         // The backslash and what it escapes
+                    }
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    if (--depth == 0) {
+                        return;
+                    }
+                } else if (b == '/') {
+                    skipSlashComment();
+                } else if (b == '#') {
+                    skipToEOLN();
+                }
+            }
+            if (!fill()) {
+                throw new IOException("Unexpected EOF");
+            }
+        }
+    }
+
+    void readConstant(String wanted) throws IOException {
+        for (int i = 0; i < wanted.length(); i++) {
+            int ch = read();
+            if (ch != wanted.charAt(i)) {
+                JsonIO.throwUnexpected(ch);
+            }
+        }
+    }
+
+    void scanNumber(int initial) throws IOException {
+        int state = numberStart(initial);
+        numBuf[0] = (char) initial;
+        numLen = 1;
+        for (;;) {
+            if (pos >= limit && !fill()) {
+                numberEnd(state, -1);
+                return;
+            }
+            int b = buf.get(pos);
+            int next = numberNext(state, b);
+            if (next == NUM_END) {
+                numberEnd(state, b);
+                return;
+            }
+            state = next;
+            if (numLen == numBuf.length) {
+                growNumBuf();
+            }
+            numBuf[numLen++] = (char) b;
+            pos++;
+        }
+    }
+
+    void skipNumber(int initial) throws IOException {
+        int state = numberStart(initial);
+        for (;;) {
+            if (pos >= limit && !fill()) {
+                return;
+            }
+            state = numberNext(state, buf.get(pos));
+            if (state == NUM_END) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -1,9 +1,32 @@
 
 import java.io.StringReader;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import com.jovial.util.JsonBinary;
+import com.jovial.util.JsonBinding;
+import com.jovial.util.JsonCursor;
 import com.jovial.util.JsonIO;
+import com.jovial.util.JsonKeyCache;
+import com.jovial.util.JsonLines;
+import com.jovial.util.JsonMetrics;
+import com.jovial.util.JsonNumber;
+import com.jovial.util.JsonPath;
+import com.jovial.util.JsonProjection;
+import com.jovial.util.JsonPushParser;
+import com.jovial.util.JsonReader;
+import com.jovial.util.JsonString;
+import com.jovial.util.JsonWriter;
 
 public class Main {
 
@@ -41,5 +64,1302 @@ public class Main {
         } catch (IOException ex) {
             System.out.println("Got expected exception:  " + ex);
         }
+        testJsonReader();
+        testUtf8();
+        testGrammar();
+        testMappedFile();
+        testLazy();
+        testPrimitiveArrays();
+        testKeyCache();
+        testDoubles();
+        testJsonWriter();
+        testJsonLines();
+        testParallelArray();
+        testBinding();
+        testPushParser();
+        testStringSlices();
+        testBinary();
+        testJsonPath();
+        testReset();
+        testDeepNesting();
+        testCompactMaps();
+        testLazyWriting();
+        testMetrics();
+        testWordScanning();
+        testRawNumbers();
+        testProjection();
+        testOffHeap();
+    }
+
+    //
+    // A document that exercises most of the grammar
+    //
+    private static final String SAMPLE =
+        "// A comment\n"
+        + "{ \"a\" : [1, 2.5, -3e2, 9223372036854775807, true, false, null],\n"
+        + "  'b' : 'single \\'quoted\\'', # another comment\n"
+        + "  \"c\" : { \"d\" : \"esc\\n\\u0041\\x42\" /* block */ },\n"
+        + "  \"e\" : [], \"f\" : {}, 7 : \"numeric key\" }";
+
+    private static void testJsonReader() throws Exception {
+        System.out.println("Testing JsonReader:");
+        Object expected = JsonIO.readJSON(new BufferedReader(new StringReader(SAMPLE)));
+        JsonReader rdr = new JsonReader(new StringReader(SAMPLE));
+        Object value = rdr.readValue();
+        assert expected.equals(value) : value;
+        assert rdr.peek() == JsonReader.Token.END_DOCUMENT;
+
+        rdr = new JsonReader(new StringReader(SAMPLE));
+        rdr.beginObject();
+        assert "a".equals(rdr.nextName());
+        rdr.beginArray();
+        assert rdr.nextNumber().equals(1);
+        assert rdr.nextNumber().equals(2.5);
+        rdr.skipValue();
+        assert rdr.nextNumber() instanceof Long;
+        assert rdr.nextBoolean();
+        assert !rdr.nextBoolean();
+        rdr.nextNull();
+        assert !rdr.hasNext();
+        rdr.endArray();
+        assert "b".equals(rdr.nextName());
+        assert "single 'quoted'".equals(rdr.nextString());
+        rdr.skipValue();        // Skips "c" and its value
+        assert "e".equals(rdr.nextName());
+        rdr.skipValue();
+        assert "f".equals(rdr.nextName());
+        assert ((Map) rdr.readValue()).isEmpty();
+        assert rdr.nextKey().equals(7);
+        assert rdr.peek() == JsonReader.Token.STRING;
+        rdr.skipValue();
+        rdr.endObject();
+        assert rdr.peek() == JsonReader.Token.END_DOCUMENT;
+
+        rdr = new JsonReader(new StringReader("1 [2] {\"x\":3} \"four\""));
+        int count = 0;
+        while (rdr.peek() != JsonReader.Token.END_DOCUMENT) {
+            rdr.readValue();
+            count++;
+        }
+        assert count == 4;
+
+        try {
+            new JsonReader(new StringReader("[1, 2")).readValue();
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+        try {
+            new JsonReader(new StringReader("[1 2]")).readValue();
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+    }
+
+    private static void testUtf8() throws Exception {
+        System.out.println("Testing UTF-8 input:");
+        String doc = "{ \"text\" : \"caf\u00e9 \u20ac \ud83d\ude00 \\u00e9\", "
+                     + "'sample' : " + SAMPLE + " }";
+        Object expected = JsonIO.readJSON(new BufferedReader(new StringReader(doc)));
+        byte[] bytes = doc.getBytes(StandardCharsets.UTF_8);
+        assert expected.equals(JsonIO.readJSON(bytes));
+        assert expected.equals(JsonIO.readJSON(new ByteArrayInputStream(bytes)));
+
+        StringBuilder big = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            big.append(i == 0 ? "" : ",").append(doc);
+        }
+        big.append("]");
+        bytes = big.toString().getBytes(StandardCharsets.UTF_8);
+        List list = (List) JsonIO.readJSON(new ByteArrayInputStream(bytes));
+        assert list.size() == 500 && expected.equals(list.get(499));
+
+        ByteBuffer bb = ByteBuffer.wrap("  [1, 2] 3".getBytes(StandardCharsets.UTF_8));
+        Object v = JsonIO.readJSON(bb);
+        assert v instanceof List && ((List) v).size() == 2;
+        assert bb.position() == 8 : bb.position();
+        assert JsonIO.readJSON(bb).equals(3);
+        assert !bb.hasRemaining();
+        assert JsonIO.readJSON(".5".getBytes(StandardCharsets.UTF_8)).equals(0.5);
+        assert JsonIO.readJSON("[-.5e1, 1.]".getBytes(StandardCharsets.UTF_8))
+                .equals(JsonIO.stringToValue("[-5.0, 1.0]"));
+    }
+
+    //
+    // The cases the original readJSON(Reader) was tested with, and the
+    // corners of its grammar.  Every other way of reading should agree
+    // with it, value for value, and fail where it fails.
+    //
+    private static void testGrammar() throws Exception {
+        System.out.println("Testing grammar:");
+        String notInteger = "" + Integer.MAX_VALUE + "000";
+        String[] cases = {
+            "1000", notInteger, notInteger + ".0", notInteger + "e7",
+            "" + Long.MAX_VALUE, "" + Long.MIN_VALUE, "9223372036854775808",
+            "-9223372036854775809", ".5", "-.5", "5.", "-5.e2", "e3", "E3",
+            "-e3", ".", "-.", "[.5, -.25e1, 7.]", "1.2.3", "True", "Null",
+            "{,, 'a' : 1,, }", "{ 'a' : 1 'b' : 2 }", "{ {'k' : 1} : 2 }",
+            "{ [1, [2]] : 3, [] : 4 }", "{ null : 1, true : 2, .5 : 3 }",
+            "{ 'a' : { [1] : { {} : [] } } }", "[ 'x' /* c */, # c\n 'y' ]",
+            "-", "--1", "+1", "1e", "1e+", "-x", "[1,]", "[,1]", "[1 2]",
+            "{ 'a' 1 }", "{ 'a' : }", "TRUE", "[", "{ [1 : 2 }"
+        };
+        for (String s : cases) {
+            Object expected;
+            try {
+                expected = JsonIO.readJSON(new StringReader(s));
+            } catch (IOException ex) {
+                expected = ex;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < 5; i++) {
+                Object got;
+                try {
+                    switch (i) {
+                        case 0:
+                            got = new JsonReader(new StringReader(s)).readValue();
+                            break;
+                        case 1:
+                            got = new JsonReader(bytes).readValue();
+                            break;
+                        case 2:
+                            got = JsonIO.readJSON(bytes);
+                            break;
+                        case 3:
+                            got = JsonIO.readJSON(new ByteArrayInputStream(bytes));
+                            break;
+                        default:
+                            got = JsonIO.stringToValue(s);
+                            break;
+                    }
+                } catch (IOException ex) {
+                    got = ex;
+                }
+                if (expected instanceof IOException) {
+                    assert got instanceof IOException : s + " gives " + got + " from " + i;
+                } else {
+                    assert java.util.Objects.equals(expected, got)
+                        : s + " gives " + got + " from " + i + ", not " + expected;
+                }
+            }
+        }
+    }
+
+    private static void testMappedFile() throws Exception {
+        System.out.println("Testing mapped file input:");
+        Object expected = JsonIO.readJSON(new BufferedReader(new StringReader(SAMPLE)));
+        Path path = Files.createTempFile("jsonio", ".json");
+        try {
+            Files.write(path, SAMPLE.getBytes(StandardCharsets.UTF_8));
+            assert expected.equals(JsonIO.readJSON(path));
+            JsonReader rdr = new JsonReader(path);
+            rdr.beginObject();
+            assert "a".equals(rdr.nextName());
+            rdr.close();
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static void testLazy() throws Exception {
+        System.out.println("Testing lazy reading:");
+        Object expected = JsonIO.readJSON(new BufferedReader(new StringReader(SAMPLE)));
+        byte[] bytes = SAMPLE.getBytes(StandardCharsets.UTF_8);
+        Map lazy = (Map) JsonIO.readLazyJSON(bytes);
+        assert "single 'quoted'".equals(lazy.get("b"));
+        assert lazy.get("nope") == null && !lazy.containsKey("nope");
+        assert "numeric key".equals(lazy.get(7));
+        assert ((List) lazy.get("a")).get(3) instanceof Long;
+        assert ((Map) lazy.get("c")).get("d").equals("esc\nAB");
+        assert lazy.equals(expected) && expected.equals(lazy);
+        assert lazy.hashCode() == expected.hashCode();
+
+        Map dup = (Map) JsonIO.readLazyJSON("{\"k\":1, \"k\":2, \"\\u006b2\":3}".getBytes(StandardCharsets.UTF_8));
+        assert dup.get("k").equals(2) && dup.size() == 2;
+        assert dup.get("k2").equals(3);
+        try {
+            JsonIO.readLazyJSON("{\"a\": [1, 2}".getBytes(StandardCharsets.UTF_8));
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+    }
+
+    private static Object readPrimitive(String s) throws Exception {
+        JsonReader rdr = new JsonReader(new StringReader(s));
+        rdr.setPrimitiveArrays(true);
+        return rdr.readValue();
+    }
+
+    private static void testPrimitiveArrays() throws Exception {
+        System.out.println("Testing primitive arrays:");
+        assert java.util.Arrays.equals((int[]) readPrimitive("[1, 2, -3]"),
+                                       new int[] { 1, 2, -3 });
+        assert java.util.Arrays.equals((long[]) readPrimitive("[1, 9223372036854775807]"),
+                                       new long[] { 1, Long.MAX_VALUE });
+        assert java.util.Arrays.equals((double[]) readPrimitive("[1, 3000000000, 2.5]"),
+                                       new double[] { 1, 3e9, 2.5 });
+        Object mixed = readPrimitive("[1, 2.5, 3000000000, 4, \"x\", 5]");
+        Object expected = readFrom("[1, 2.5, 3000000000, 4, \"x\", 5]");
+        assert expected.equals(mixed) : mixed;
+        String big = "[9007199254740993, 1.5, -9223372036854775807, 7, true]";
+        mixed = readPrimitive(big);
+        assert readFrom(big).equals(mixed) : mixed;
+        assert ((List) mixed).get(0).equals(9007199254740993L);
+        assert readPrimitive("[]") instanceof List;
+        Map m = (Map) readPrimitive("{\"a\": [[1,2],[3.5]]}");
+        List outer = (List) m.get("a");
+        assert outer.get(0) instanceof int[] && outer.get(1) instanceof double[];
+
+        String out = JsonIO.valueToString(new Object[] {
+            new int[] { 1, 2 }, new long[] { 3 }, new double[] { 4.5 },
+            new float[] { 5.5f }, new int[0] });
+        assert "[[1,2],[3],[4.5],[5.5],[]]".equals(out) : out;
+    }
+
+    private static void testKeyCache() throws Exception {
+        System.out.println("Testing key cache:");
+        String doc = "[{\"id\":1, \"name\":\"a\"}, {\"id\":2, \"name\":\"b\"}, {'n\\u0061me':3}]";
+        JsonKeyCache cache = new JsonKeyCache(16);
+        Object[] results = {
+            readWithCache(new JsonReader(new StringReader(doc)), cache),
+            readWithCache(new JsonReader(doc.getBytes(StandardCharsets.UTF_8)), cache)
+        };
+        for (Object r : results) {
+            assert r.equals(readFrom(doc));
+            List list = (List) r;
+            Object k0 = ((Map) list.get(0)).keySet().iterator().next();
+            for (Object m : list) {
+                for (Object k : ((Map) m).keySet()) {
+                    if (k.equals(k0)) {
+                        assert k == k0;
+                    }
+                }
+            }
+        }
+    }
+
+    private static Object readWithCache(JsonReader rdr, JsonKeyCache cache) throws Exception {
+        rdr.setKeyCache(cache);
+        return rdr.readValue();
+    }
+
+    private static void checkDouble(String s) throws Exception {
+        double expected = Double.parseDouble(s);
+        Object fromReader = JsonIO.readJSON(new StringReader(s));
+        Object fromBytes = JsonIO.readJSON(s.getBytes(StandardCharsets.UTF_8));
+        if (fromReader instanceof Double) {
+            assert ((Double) fromReader).doubleValue() == expected
+                   || Double.isNaN(expected) : s + " gives " + fromReader;
+        } else {
+            assert ((Number) fromReader).doubleValue() == expected : s;
+        }
+        assert fromReader.equals(fromBytes) : s + " gives " + fromBytes;
+    }
+
+    private static void testDoubles() throws Exception {
+        System.out.println("Testing doubles:");
+        String[] cases = {
+            "0.1", "0.3", "1.7976931348623157e308", "1.7976931348623159e308",
+            "2.2250738585072014e-308", "2.2250738585072011e-308",
+            "4.9e-324", "2.4703282292062328e-324", "2.4703282292062327e-324",
+            "1e-400", "1e400", "9007199254740993", "9007199254740993.0",
+            "123456789012345678901234567890", "0.000000000000000000000000123",
+            "1.00000000000000011102230246251565404236316680908203125",
+            "1.00000000000000011102230246251565404236316680908203124",
+            "1.00000000000000011102230246251565404236316680908203126",
+            "7.3177701707893310e+15", "-0.0", "12345.6789e-3", "1E22", "1e23",
+            "8.98846567431158e307", "1.1e-323", "5e-324", "3e-324"
+        };
+        for (String c : cases) {
+            checkDouble(c);
+        }
+        java.util.Random r = new java.util.Random(42);
+        for (int i = 0; i < 50000; i++) {
+            double d;
+            if (i % 2 == 0) {
+                d = Double.longBitsToDouble(r.nextLong());
+            } else {
+                d = r.nextDouble() * Math.pow(10, r.nextInt(40) - 20);
+            }
+            if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+                checkDouble(Double.toString(d));
+                checkDouble(String.format("%.17e", d));
+            }
+            StringBuilder digits = new StringBuilder();
+            int n = 1 + r.nextInt(25);
+            for (int j = 0; j < n; j++) {
+                digits.append((char) ('0' + r.nextInt(10)));
+            }
+            int dot = r.nextInt(n);
+            digits.insert(dot, '.');
+            if (dot == 0) {
+                digits.insert(0, '0');
+            }
+            checkDouble(digits + "e" + (r.nextInt(700) - 350));
+        }
+    }
+
+    private static void testJsonWriter() throws Exception {
+        System.out.println("Testing JsonWriter:");
+        String str = "q\" b\\ \b\f\n\r\t \u0001\u007f caf\u00e9 \u20ac \ud83d\ude00";
+        String escaped = "\"q\\\" b\\\\ \\b\\f\\n\\r\\t \\u0001\\u007f caf\\u00e9 \\u20ac \\ud83d\\ude00\"";
+        assert escaped.equals(JsonIO.valueToString(str)) : JsonIO.valueToString(str);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        JsonIO.writeJSON(bos, str);
+        assert escaped.equals(bos.toString("UTF-8"));
+
+        StringWriter sw = new StringWriter();
+        JsonWriter w = new JsonWriter(sw);
+        w.setEscapeNonAscii(false);
+        w.write(str);
+        w.flush();
+        String raw = sw.toString();
+        assert raw.contains("caf\u00e9 \u20ac \ud83d\ude00") : raw;
+        assert str.equals(JsonIO.readJSON(new BufferedReader(new StringReader(raw))));
+
+        bos = new ByteArrayOutputStream();
+        w = new JsonWriter(bos);
+        w.setEscapeNonAscii(false);
+        w.write(str);
+        w.flush();
+        assert java.util.Arrays.equals(bos.toByteArray(), raw.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            big.append("abc\u00e9\n");
+        }
+        Object doc = JsonIO.readJSON(SAMPLE.getBytes(StandardCharsets.UTF_8));
+        Object[] values = { big.toString(), doc, Long.MIN_VALUE, -12345, 0, 2.5 };
+        for (Object v : values) {
+            String s1 = JsonIO.valueToString(v);
+            ByteBuffer bb = ByteBuffer.allocate(100000);
+            w = new JsonWriter(bb);
+            w.write(v);
+            w.flush();
+            bb.flip();
+            assert s1.equals(StandardCharsets.UTF_8.decode(bb).toString());
+            assert v.equals(JsonIO.stringToValue(s1));
+        }
+    }
+
+    private static void testJsonLines() throws Exception {
+        System.out.println("Testing JSON Lines:");
+        java.util.ArrayList records = new java.util.ArrayList();
+        for (int i = 0; i < 40000; i++) {
+            Map m = new java.util.HashMap();
+            m.put("id", i);
+            m.put("name", "record number " + i + " caf\u00e9\n");
+            m.put("values", java.util.Arrays.asList(i, i * 0.5, "x"));
+            records.add(m);
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        JsonWriter w = new JsonWriter(bos);
+        JsonLines.write(w, records.iterator());
+        w.flush();
+        byte[] bytes = bos.toByteArray();
+        assert bytes.length > 3 << 20;      // Enough for several chunks
+
+        java.util.Iterator it = JsonLines.records(new JsonReader(new ByteArrayInputStream(bytes)));
+        int n = 0;
+        while (it.hasNext()) {
+            assert records.get(n++).equals(it.next());
+        }
+        assert n == records.size();
+
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        assert records.equals(JsonLines.readParallel(ByteBuffer.wrap(bytes), pool));
+        Path path = Files.createTempFile("jsonio", ".jsonl");
+        try {
+            Files.write(path, bytes);
+            assert records.equals(JsonLines.readParallel(path, pool));
+            final java.util.concurrent.atomic.AtomicLong sum = new java.util.concurrent.atomic.AtomicLong();
+            JsonLines.forEachParallel(path, pool, false, r -> sum.addAndGet(((Integer) ((Map) r).get("id")).longValue()));
+            assert sum.get() == 39999L * 40000 / 2;
+        } finally {
+            Files.delete(path);
+        }
+        try {
+            JsonLines.readParallel(ByteBuffer.wrap("1\n[2\n3\n".getBytes(StandardCharsets.UTF_8)), pool);
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+        pool.shutdown();
+
+        //
+        // When the action throws, the chunks still in flight are stopped
+        // and waited for.  Here the first chunk fails at once, while the
+        // pool's two threads are held up in the next two.
+        //
+        pool = new java.util.concurrent.ForkJoinPool(2);
+        final java.util.concurrent.atomic.AtomicInteger seen
+            = new java.util.concurrent.atomic.AtomicInteger();
+        final java.util.Set<Thread> slept = java.util.concurrent.ConcurrentHashMap.newKeySet();
+        try {
+            JsonLines.forEachParallel(ByteBuffer.wrap(bytes), pool, false, r -> {
+                if (((Map) r).get("id").equals(0)) {
+                    throw new IllegalStateException("Stop at 0");
+                }
+                seen.incrementAndGet();
+                if (slept.add(Thread.currentThread())) {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            assert false;
+        } catch (IllegalStateException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+        int seenAtReturn = seen.get();
+        assert pool.awaitQuiescence(10, java.util.concurrent.TimeUnit.SECONDS);
+        assert seen.get() == seenAtReturn;
+        assert seenAtReturn <= 2 : seenAtReturn;
+        pool.shutdown();
+    }
+
+    private static void testParallelArray() throws Exception {
+        System.out.println("Testing parallel arrays:");
+        StringBuilder sb = new StringBuilder("  // A big array\n[");
+        for (int i = 0; i < 30000; i++) {
+            if (i > 0) {
+                sb.append(i % 100 == 0 ? ",/* ] , */\n" : ",");
+            }
+            sb.append("{\"id\":" + i + ", 'tricky':\"],[\\\"{,\\\\\", ");
+            sb.append("\"list\":[" + i + ", 2.5, \"caf\u00e9\", null, {}], # ,]\n");
+            sb.append("\"ok\":true}");
+        }
+        sb.append("]  ");
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        assert bytes.length > 2 << 20;
+        Object expected = JsonIO.readJSON(bytes);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        assert expected.equals(JsonIO.readJSONParallel(bytes, pool));
+        ByteBuffer bb = ByteBuffer.wrap(bytes);
+        assert expected.equals(JsonIO.readJSONParallel(bb, pool));
+        assert bb.position() == bytes.length - 2;
+        assert expected.equals(JsonIO.streamArray(ByteBuffer.wrap(bytes))
+                               .collect(java.util.stream.Collectors.toList()));
+        Path path = Files.createTempFile("jsonio", ".json");
+        try {
+            Files.write(path, bytes);
+            assert expected.equals(JsonIO.readJSONParallel(path, pool));
+        } finally {
+            Files.delete(path);
+        }
+        for (String s : new String[] { "[]", " [ ] ", "[1]", "{\"a\":[1,2]}", "'x'", "3" }) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            assert JsonIO.readJSON(b).equals(JsonIO.readJSONParallel(b, pool));
+        }
+        for (String s : new String[] { "[1,]", "[,1]", "[1 2]", "[1}", "[1,2", "[1,,2]" }) {
+            try {
+                JsonIO.readJSONParallel(s.getBytes(StandardCharsets.UTF_8), pool);
+                assert false : s;
+            } catch (IOException ex) {
+                System.out.println("Got expected exception:  " + ex);
+            }
+        }
+        pool.shutdown();
+
+        //
+        // When the first chunk fails, the rest are given up on, and
+        // nothing is left queued.
+        //
+        pool = new java.util.concurrent.ForkJoinPool(1);
+        byte[] broken = bytes.clone();
+        int colon = sb.indexOf(":");
+        broken[colon] = ',';
+        try {
+            JsonIO.readJSONParallel(broken, pool);
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+        assert pool.getQueuedSubmissionCount() == 0 && pool.getQueuedTaskCount() == 0;
+        assert expected.equals(JsonIO.readJSONParallel(bytes, pool));
+        pool.shutdown();
+    }
+
+    enum Color { RED, GREEN }
+
+    record Point(int x, double y, String label) { }
+
+    record Shape(String name, List<Point> points, Color color,
+                 Map<String, Integer> counts, int[] ids, Object extra) { }
+
+    static class Base {
+        protected long serial;
+    }
+
+    static class Node extends Base {
+        private String name;
+        private boolean leaf;
+        private char mark;
+        Node[] children;
+        java.util.Set<Color> colors;
+        transient int ignored = 7;
+        static int alsoIgnored;
+
+        Node() {
+        }
+    }
+
+    static class Hidden extends Base {
+        protected int serial = 2;
+    }
+
+    private static void testBinding() throws Exception {
+        System.out.println("Testing binding:");
+        String json = "{'name':'tri', 'points':[{'x':1,'y':2.5,'label':'a'}, "
+                + "{'x':3, 'y':4, 'unknown':[1,{}]}, null], 'color':'GREEN', "
+                + "'counts':{'a':1, 'b':2}, 'ids':[4,5,6], 'extra':{'k':[true]}}";
+        Shape s = JsonBinding.read(new JsonReader(new StringReader(json)), Shape.class);
+        assert s.name().equals("tri");
+        assert s.points().size() == 3 && s.points().get(2) == null;
+        assert s.points().get(0).equals(new Point(1, 2.5, "a"));
+        assert s.points().get(1).equals(new Point(3, 4.0, null));
+        assert s.color() == Color.GREEN;
+        assert s.counts().get("b").equals(2);
+        assert java.util.Arrays.equals(s.ids(), new int[] { 4, 5, 6 });
+        assert s.extra().equals(JsonIO.stringToValue("{'k':[true]}"));
+        String out = JsonBinding.toJSON(s);
+        Object generic = JsonIO.stringToValue(out);
+        assert ((Map) generic).get("color").equals("GREEN");
+        Shape s2 = JsonBinding.read(out.getBytes(StandardCharsets.UTF_8), Shape.class);
+        assert JsonBinding.toJSON(s2).equals(out);
+
+        Node root = JsonBinding.read(("{'name':'root', 'serial':12345678901, 'mark':'x', "
+                + "'colors':['RED'], 'ignored':3, "
+                + "'children':[{'name':'kid', 'leaf':true, 'children':null}]}")
+                .getBytes(StandardCharsets.UTF_8), Node.class);
+        assert root.name.equals("root") && root.serial == 12345678901L;
+        assert root.mark == 'x' && !root.leaf && root.ignored == 7;
+        assert root.colors.contains(Color.RED);
+        assert root.children.length == 1 && root.children[0].leaf;
+        assert root.children[0].children == null;
+        String rootJson = JsonBinding.toJSON(root);
+        assert !rootJson.contains("ignored");
+        Node copy = JsonBinding.read(rootJson.getBytes(StandardCharsets.UTF_8), Node.class);
+        assert JsonBinding.toJSON(copy).equals(rootJson);
+        assert JsonBinding.toJSON(java.util.Arrays.asList(new Point(1, 2, "p"), 3))
+                .equals("[{\"x\":1,\"y\":2.0,\"label\":\"p\"},3]");
+        try {
+            JsonBinding.read("{'x':'one'}".getBytes(StandardCharsets.UTF_8), Point.class);
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+
+        // Lazy values are written as JsonWriter writes them, not as beans
+        Map<String, Object> lazy = new java.util.LinkedHashMap<String, Object>();
+        lazy.put("s", (java.util.function.Supplier<Object>) () -> List.of(1, 2));
+        lazy.put("i", List.of(3).iterator());
+        lazy.put("t", java.util.stream.Stream.of("a"));
+        assert JsonBinding.toJSON(lazy).equals("{\"s\":[1,2],\"i\":[3],\"t\":[\"a\"]}")
+                : JsonBinding.toJSON(lazy);
+
+        // A field hidden by a subclass field isn't written or read
+        Hidden h = new Hidden();
+        ((Base) h).serial = 1;
+        assert JsonBinding.toJSON(h).equals("{\"serial\":2}");
+        h = JsonBinding.read("{'serial':5}".getBytes(StandardCharsets.UTF_8), Hidden.class);
+        assert h.serial == 5 && ((Base) h).serial == 0;
+
+        // Numbers are converted exactly, or not at all
+        assert JsonBinding.read("{'x':3.0}".getBytes(StandardCharsets.UTF_8),
+                                Point.class).x() == 3;
+        assert JsonBinding.read("[-128, 127]".getBytes(StandardCharsets.UTF_8),
+                                byte[].class)[0] == -128;
+        assert JsonBinding.read("9223372036854775807".getBytes(StandardCharsets.UTF_8),
+                                long.class) == Long.MAX_VALUE;
+        for (String bad : new String[] { "{'x':3.9}", "{'x':2147483648}",
+                                         "{'x':-1e300}", "{'x':1e19}" }) {
+            try {
+                JsonBinding.read(bad.getBytes(StandardCharsets.UTF_8), Point.class);
+                assert false;
+            } catch (IOException ex) {
+                System.out.println("Got expected exception:  " + ex);
+            }
+        }
+        try {
+            JsonBinding.read("[1, 128]".getBytes(StandardCharsets.UTF_8), byte[].class);
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+        try {
+            JsonBinding.read("1e19".getBytes(StandardCharsets.UTF_8), long.class);
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+    }
+
+    private static void testPushParser() throws Exception {
+        System.out.println("Testing push parser:");
+        String text = SAMPLE + " 'top\\'s' /* c */ -12.5e3 # comment\n true [] {}"
+                + "\"caf\u00e9\" // end\n 42";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        List expected = new java.util.ArrayList();
+        JsonReader rdr = new JsonReader(bytes);
+        while (rdr.peek() != JsonReader.Token.END_DOCUMENT) {
+            expected.add(rdr.readValue());
+        }
+        for (int piece = 1; piece <= bytes.length; piece += (piece < 20) ? 1 : 37) {
+            List got = new java.util.ArrayList();
+            JsonPushParser p = new JsonPushParser(got::add);
+            for (int i = 0; i < bytes.length; i += piece) {
+                p.feed(bytes, i, Math.min(piece, bytes.length - i));
+            }
+            assert got.size() == expected.size() - 1;   // 42 isn't done
+            assert !p.isBetweenValues();
+            p.finish();
+            assert got.equals(expected) : "piece " + piece;
+        }
+        for (String s : new String[] { "[1, 2", "'abc", "/* x", "1 , 2", "]", "{'a':}", "tru e" }) {
+            try {
+                JsonPushParser p = new JsonPushParser(v -> { });
+                p.feed(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+                p.finish();
+                assert false : s;
+            } catch (IOException ex) {
+                System.out.println("Got expected exception:  " + ex);
+            }
+        }
+        JsonPushParser p = new JsonPushParser(v -> { });
+        p.setMaxValueSize(10);
+        p.feed(ByteBuffer.wrap("[1,2,3,4,5,6,7,8,9] [1,".getBytes(StandardCharsets.UTF_8)));
+        try {
+            p.feed(ByteBuffer.wrap("2,3,4,5,6]".getBytes(StandardCharsets.UTF_8)));
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+    }
+
+    private static void testStringSlices() throws Exception {
+        System.out.println("Testing string slices:");
+        String text = "{\"plain\":\"hello world\", \"esc\":\"a\\nb\", "
+                + "\"utf\":\"caf\u00e9\", 'single':'say \"hi\"\ttab', "
+                + "\"list\":[\"x\", \"\", 3]}";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        JsonReader rdr = new JsonReader(bytes);
+        rdr.setStringSlices(true);
+        Map m = (Map) rdr.readValue();
+        assert m.get("plain") instanceof JsonString;
+        assert m.get("esc") instanceof String;
+        assert m.get("utf") instanceof String;
+        JsonString plain = (JsonString) m.get("plain");
+        assert "hello world".contentEquals(plain);
+        assert plain.hashCode() == "hello world".hashCode();
+        assert plain.subSequence(6, 11).toString().equals("world");
+        assert plain.charAt(4) == 'o';
+        assert ((List) m.get("list")).get(1) instanceof JsonString;
+        Object expected = JsonIO.readJSON(bytes);
+        assert JsonIO.valueToString(m).equals(JsonIO.valueToString(expected));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        JsonIO.writeJSON(bos, m);
+        assert JsonIO.readJSON(bos.toByteArray()).equals(expected);
+        assert JsonBinding.toJSON(m).equals(JsonIO.valueToString(m));
+
+        rdr = new JsonReader(new ByteArrayInputStream(bytes));
+        rdr.setStringSlices(true);
+        m = (Map) rdr.readValue();
+        assert m.get("plain") instanceof String;
+        assert m.equals(expected);
+    }
+
+    private static void testBinary() throws Exception {
+        System.out.println("Testing JsonBinary:");
+        Object expected = JsonIO.readJSON(new BufferedReader(new StringReader(SAMPLE)));
+        for (boolean dict : new boolean[] { true, false }) {
+            byte[] enc = JsonBinary.encode(expected, dict);
+            Object value = JsonBinary.decode(enc);
+            assert expected.equals(value) : value;
+        }
+        List<Object> records = new java.util.ArrayList<Object>();
+        for (int i = 0; i < 100; i++) {
+            records.add(Map.of("id", i, "name", "n" + i, "score", i * 0.5));
+        }
+        byte[] withDict = JsonBinary.encode(records, true);
+        byte[] without = JsonBinary.encode(records, false);
+        assert withDict.length < without.length;
+        assert records.equals(JsonBinary.decode(withDict));
+        assert records.equals(JsonBinary.decode(without));
+
+        //
+        // Values should come back as readJSON would give them from text
+        //
+        Object[] values = {
+            Long.MIN_VALUE, Long.MAX_VALUE, 5L, Integer.MIN_VALUE, (short) -3,
+            1.5f, 0.1, -0.0, "caf\u00e9 \u4e2d \ud83d\ude00",
+            new int[] { 1, -2, 3 }, new long[] { 1L << 40, 7 },
+            new double[] { 1.25, -1e300 }, new Object[] { "x", null, true }
+        };
+        for (Object v : values) {
+            Object text = JsonIO.stringToValue(JsonIO.valueToString(v));
+            Object bin = JsonBinary.decode(JsonBinary.encode(v));
+            assert text.equals(bin) : v + " gives " + bin;
+        }
+        String lone = "a\ud800b";
+        assert lone.equals(JsonBinary.decode(JsonBinary.encode(lone)));
+        assert ((Double) JsonBinary.decode(JsonBinary.encode(Double.NaN))).isNaN();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        JsonBinary.write(bos, records, true);
+        ByteBuffer buf = ByteBuffer.allocateDirect(bos.size() + 1);
+        buf.put(bos.toByteArray()).put((byte) 42).flip();
+        assert records.equals(JsonBinary.decode(buf));
+        assert buf.remaining() == 1;
+        for (byte[] enc : new byte[][] { withDict, JsonBinary.encode(1.5) }) {
+            ByteBuffer little = ByteBuffer.wrap(enc).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+            assert JsonBinary.decode(enc).equals(JsonBinary.decode(little));
+            assert little.order() == java.nio.ByteOrder.LITTLE_ENDIAN;
+        }
+
+        byte[] truncated = java.util.Arrays.copyOf(withDict, withDict.length - 3);
+        try {
+            JsonBinary.decode(truncated);
+            assert false;
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    private static void testJsonPath() throws Exception {
+        System.out.println("Testing JsonPath:");
+        String text = "{ \"meta\" : { \"requestId\" : 'r-17', \"a/b\" : 1, \"c~d\" : 2 },\n"
+                + "  \"skip\" : [ \"]}\\\"[{\", { \"x\" : [[]] } /* ] */, # }\n {} ],\n"
+                + "  \"items\" : [ { \"price\" : 1.5 }, { \"name\" : \"no price\" },\n"
+                + "               { \"price\" : 3 } ],\n"
+                + "  7 : \"seven\" }";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        Object whole = JsonIO.readJSON(bytes);
+        assert "r-17".equals(JsonPath.compile("/meta/requestId").select(bytes));
+        assert "r-17".equals(JsonPath.compile("/meta/requestId").select(new StringReader(text)));
+        assert JsonPath.compile("/meta/a~1b").select(bytes).equals(1);
+        assert JsonPath.compile("/meta/c~0d").select(bytes).equals(2);
+        assert JsonPath.compile("/7").select(bytes).equals("seven");
+        assert JsonPath.compile("/items/2/price").select(bytes).equals(3);
+        assert JsonPath.compile("/items/02/price").select(bytes) == null;
+        assert JsonPath.compile("/nothing/here").select(bytes) == null;
+        assert JsonPath.compile("").select(bytes).equals(whole);
+        assert JsonPath.compile("/skip/1").select(bytes).equals(((List) ((Map) whole).get("skip")).get(1));
+        List<Object> prices = JsonPath.compile("/items/*/price").selectAll(bytes);
+        assert prices.equals(List.of(1.5, 3)) : prices;
+        List<Object> all = JsonPath.compile("/*").selectAll(ByteBuffer.wrap(bytes));
+        assert all.size() == 4;
+
+        //
+        // With a key given more than once, the last is used, as readJSON
+        // does.  Skipped numbers aren't converted, so a bad one is passed.
+        //
+        byte[] dup = "{'a':1, 'b':2, 'a':3, 'n':1.2e}".getBytes(StandardCharsets.UTF_8);
+        assert JsonPath.compile("/a").select(dup).equals(3);
+        assert JsonPath.compile("/a").selectAll(dup).equals(List.of(3));
+        assert JsonPath.compile("/a").select(new StringReader(new String(dup, StandardCharsets.UTF_8))).equals(3);
+        dup = "{'a':{'x':1}, 'b':{'x':2}, 'a':{'y':3}}".getBytes(StandardCharsets.UTF_8);
+        assert JsonPath.compile("/a/x").select(dup) == null;
+        assert JsonPath.compile("/*/x").selectAll(dup).equals(List.of(2));
+        assert JsonPath.compile("/*/y").select(dup).equals(3);
+        dup = "{'a':[{'k':1}, {'k':2}], 'a':[5]}".getBytes(StandardCharsets.UTF_8);
+        assert JsonPath.compile("/a/0/k").select(dup) == null;
+        assert JsonPath.compile("/a/0").select(dup).equals(5);
+        assert JsonPath.compile("/a/*/k").selectAll(dup).isEmpty();
+        assert JsonPath.compile("/0/k").select("[{'k':1, 'k':2}, {".getBytes(StandardCharsets.UTF_8)).equals(2);
+        try {
+            JsonPath.compile("no/slash");
+            assert false;
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+
+        //
+        // skipValue should leave the reader in the right place
+        //
+        JsonReader rdr = new JsonReader(new StringReader(text));
+        rdr.beginObject();
+        assert "meta".equals(rdr.nextName());
+        rdr.skipValue();
+        rdr.skipValue();        // "skip" and its value
+        assert "items".equals(rdr.nextName());
+        rdr.beginArray();
+        rdr.skipValue();
+        rdr.skipValue();
+        assert ((Map) rdr.readValue()).get("price").equals(3);
+        rdr.endArray();
+        assert "7".equals(rdr.nextName());
+        try {
+            new JsonReader(new StringReader("[1, [2, 3")).skipValue();
+            assert false;
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    private static void testReset() throws Exception {
+        System.out.println("Testing reset:");
+        Object expected = JsonIO.readJSON(new BufferedReader(new StringReader(SAMPLE)));
+        byte[] bytes = SAMPLE.getBytes(StandardCharsets.UTF_8);
+        JsonReader rdr = new JsonReader(new StringReader("[1, 2"));
+        rdr.setPrimitiveArrays(true);
+        rdr.beginArray();
+        rdr.reset(bytes);
+        assert expected.equals(rdr.readValue());
+        rdr.reset(new ByteArrayInputStream("[1, 2]".getBytes(StandardCharsets.UTF_8)));
+        assert rdr.readValue() instanceof int[];
+        rdr.reset(new StringReader(SAMPLE));
+        assert expected.equals(rdr.readValue());
+        rdr.reset(ByteBuffer.wrap(bytes));
+        assert expected.equals(rdr.readValue());
+        assert rdr.peek() == JsonReader.Token.END_DOCUMENT;
+
+        String text = JsonIO.valueToString(expected);
+        StringWriter sw = new StringWriter();
+        JsonWriter w = new JsonWriter(sw);
+        w.write("discarded");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        w.reset(bos);
+        w.write(expected);
+        w.flush();
+        assert text.equals(bos.toString("UTF-8"));
+        w.reset(sw);
+        w.write(expected);
+        w.flush();
+        assert text.equals(sw.toString());
+
+        //
+        // The pooled instances in JsonIO must cope with a nested call
+        //
+        Object nested = new Object() {
+            public String toString() {
+                try {
+                    return JsonIO.valueToString(List.of(1, "two"));
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+        sw = new StringWriter();
+        JsonIO.writeJSON(sw, List.of(nested, 3), true);
+        assert sw.toString().equals("[\"[1,\\\"two\\\"]\",3]") : sw;
+        for (int i = 0; i < 3; i++) {
+            assert expected.equals(JsonIO.readJSON(bytes));
+        }
+    }
+
+    private static void testDeepNesting() throws Exception {
+        System.out.println("Testing deep nesting:");
+        int depth = 200000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append((i % 2 == 0) ? "[" : "{\"k\":");
+        }
+        sb.append("42");
+        for (int i = depth - 1; i >= 0; i--) {
+            sb.append((i % 2 == 0) ? "]" : "}");
+        }
+        String text = sb.toString();
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        Object[] results = new Object[3];
+        Throwable[] failure = new Throwable[1];
+        Thread t = new Thread(null, () -> {
+            try {
+                results[0] = JsonIO.readJSON(bytes);
+                results[1] = JsonIO.readJSON(new BufferedReader(new StringReader(text)));
+                JsonReader rdr = new JsonReader(new StringReader(text));
+                results[2] = rdr.readValue();
+            } catch (Throwable ex) {
+                failure[0] = ex;
+            }
+        }, "small stack", 128 * 1024);
+        t.start();
+        t.join();
+        assert failure[0] == null : failure[0];
+        for (Object v : results) {
+            //
+            // equals() would recurse, so walk down to the leaf instead
+            //
+            for (int i = 0; i < depth; i++) {
+                v = (i % 2 == 0) ? ((List) v).get(0) : ((Map) v).get("k");
+            }
+            assert v.equals(42);
+        }
+
+        JsonReader rdr = new JsonReader(bytes);
+        rdr.setMaxDepth(100);
+        try {
+            rdr.readValue();
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+        rdr = new JsonReader("{\"a\":[[1]], 'b':{}}".getBytes(StandardCharsets.UTF_8));
+        rdr.setMaxDepth(3);
+        assert rdr.readValue().equals(JsonIO.stringToValue("{\"a\":[[1]], 'b':{}}"));
+        Object weird = JsonIO.stringToValue("{ {\"x\":1} : [ ], ,, 2 : {} }");
+        assert ((Map) weird).get(Map.of("x", 1)).equals(List.of());
+    }
+
+    private static void testCompactMaps() throws Exception {
+        System.out.println("Testing compact maps:");
+        Object expected = JsonIO.readJSON(new BufferedReader(new StringReader(SAMPLE)));
+        JsonReader rdr = new JsonReader(new StringReader(SAMPLE));
+        rdr.setCompactMaps(true);
+        Map m = (Map) rdr.readValue();
+        assert expected.equals(m) && m.equals(expected);
+        assert expected.hashCode() == m.hashCode();
+        assert m.get(7).equals("numeric key");
+        assert !(m instanceof java.util.HashMap);
+        try {
+            m.put("x", 1);
+            assert false;
+        } catch (UnsupportedOperationException ex) {
+            // Expected
+        }
+
+        //
+        // Order is kept, duplicates keep the last value, and big objects
+        // get a hash index.
+        //
+        StringBuilder sb = new StringBuilder("{ \"z\" : 0, \"y\" : 1, \"z\" : 2");
+        for (int i = 0; i < 40; i++) {
+            sb.append(", \"k").append(i).append("\" : ").append(i);
+        }
+        sb.append(", null : [ {}, { 'a' : { 'b' : 1 } } ] }");
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        rdr = new JsonReader(bytes);
+        rdr.setCompactMaps(true);
+        m = (Map) rdr.readValue();
+        assert m.equals(JsonIO.readJSON(bytes));
+        assert m.size() == 43;
+        Object[] order = m.keySet().toArray();
+        assert order[0].equals("z") && order[1].equals("y") && order[2].equals("k0");
+        assert m.get("z").equals(2);
+        assert m.get("k39").equals(39);
+        assert m.containsKey(null) && !m.containsKey("k40");
+        assert JsonIO.readJSON(JsonIO.valueToString(m).getBytes(StandardCharsets.UTF_8)).equals(m);
+    }
+
+    private static void testLazyWriting() throws Exception {
+        System.out.println("Testing lazy writing:");
+        java.util.function.Supplier<Object> sup = () -> List.of("a", 1);
+        Map<Object, Object> m = new java.util.LinkedHashMap<Object, Object>();
+        m.put("stream", java.util.stream.Stream.of(1, "two", null));
+        m.put("ints", java.util.stream.IntStream.range(0, 3));
+        m.put("iterator", List.of(true, 2.5).iterator());
+        m.put("set", new java.util.TreeSet<Object>(List.of("x", "y")));
+        m.put("supplier", sup);
+        String text = JsonIO.valueToString(m);
+        assert text.equals("{\"stream\":[1,\"two\",null],\"ints\":[0,1,2],"
+                           + "\"iterator\":[true,2.5],\"set\":[\"x\",\"y\"],"
+                           + "\"supplier\":[\"a\",1]}") : text;
+
+        //
+        // A big array should go out in pieces, without being built first
+        //
+        int[] flushes = { 0 };
+        ByteArrayOutputStream bos = new ByteArrayOutputStream() {
+            public void flush() {
+                flushes[0]++;
+            }
+        };
+        JsonWriter w = new JsonWriter(bos);
+        w.setFlushInterval(1000);
+        w.write(java.util.stream.IntStream.range(0, 100000)
+                .mapToObj(i -> Map.of("id", i)));
+        w.flush();
+        assert flushes[0] == 101 : flushes[0];
+        List result = (List) JsonIO.readJSON(bos.toByteArray());
+        assert result.size() == 100000;
+        assert ((Map) result.get(99999)).get("id").equals(99999);
+
+        //
+        // With convertToString, Iterables that aren't Lists are still
+        // written with toString(), and a Path, which is an Iterable of
+        // Paths, is never taken apart.
+        //
+        StringWriter sw = new StringWriter();
+        JsonIO.writeJSON(sw, java.nio.file.Paths.get("tmp"), true);
+        assert sw.toString().equals("\"tmp\"") : sw;
+        sw = new StringWriter();
+        JsonIO.writeJSON(sw, new java.util.TreeSet<Object>(List.of("a", "b")), true);
+        assert sw.toString().equals("\"[a, b]\"") : sw;
+        Iterable<Object> selfish = new Iterable<Object>() {
+            public java.util.Iterator<Object> iterator() {
+                return List.<Object>of(this).iterator();
+            }
+        };
+        for (Object v : new Object[] { java.nio.file.Paths.get("tmp"), selfish }) {
+            try {
+                JsonIO.valueToString(v);
+                assert false;
+            } catch (IOException ex) {
+                System.out.println("Got expected exception:  " + ex);
+            }
+        }
+    }
+
+    private static void testMetrics() throws Exception {
+        System.out.println("Testing metrics:");
+        String text = "{\"a\":[1,2.5,\"x\\ny\"],\"b\":{\"c\":null,\"d\":true}}";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        JsonMetrics.reset();
+        JsonIO.readJSON(bytes);
+        assert JsonMetrics.snapshot().get("documentsRead") == 0;
+
+        JsonMetrics.setEnabled(true);
+        try {
+            Object v = JsonIO.readJSON(bytes);
+            Map<String, Long> m = JsonMetrics.snapshot();
+            assert m.get("documentsRead") == 1;
+            assert m.get("bytesRead") == bytes.length;
+            assert m.get("values") == 8 : m;        // 2 objects, 1 array, 5 scalars
+            assert m.get("strings") == 5 : m;       // 4 keys, 1 value
+            assert m.get("numbers") == 2 : m;
+            assert m.get("escapes") == 1 : m;
+
+            JsonMetrics.reset();
+            JsonIO.readJSON(new BufferedReader(new StringReader(text)));
+            m = JsonMetrics.snapshot();
+            assert m.get("values") == 8 && m.get("strings") == 5 : m;
+
+            JsonMetrics.reset();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            JsonIO.writeJSON(bos, v);
+            m = JsonMetrics.snapshot();
+            assert m.get("documentsWritten") == 1;
+            assert m.get("bytesWritten") == bos.size() : m;
+            assert m.get("values") == 8 && m.get("strings") == 5 : m;
+            assert m.get("numbers") == 2 && m.get("escapes") == 1 : m;
+        } finally {
+            JsonMetrics.setEnabled(false);
+            JsonMetrics.reset();
+        }
+    }
+
+    //
+    // Strings are scanned eight bytes at a time, so try quotes, escapes
+    // and non-ASCII characters at every alignment, and near the end of the
+    // input, through each of the ways UTF-8 is read.
+    //
+    private static void testWordScanning() throws Exception {
+        System.out.println("Testing word scanning:");
+        String[] specials = { "\\n", "\\\"", "'", "\u00e9", "\ud83d\ude00", "\\\\" };
+        JsonPath second = JsonPath.compile("/1");
+        for (int indent = 0; indent < 9; indent++) {
+            for (int len = 0; len < 20; len++) {
+                for (String special : specials) {
+                    for (int at = 0; at <= len; at++) {
+                        StringBuilder sb = new StringBuilder("[\n");
+                        for (int i = 0; i < indent + 8; i++) {
+                            sb.append(' ');
+                        }
+                        StringBuilder str = new StringBuilder();
+                        for (int i = 0; i < len; i++) {
+                            str.append(i == at ? special : "" + (char) ('a' + i));
+                        }
+                        sb.append("[\"").append(str).append("\"], {'k':\"").append(str)
+                                .append("\"}]");
+                        String text = sb.toString();
+                        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                        Object expected = JsonIO.readJSON(new StringReader(text));
+                        assert expected.equals(JsonIO.readJSON(bytes)) : text;
+                        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+                        direct.put(bytes).flip();
+                        assert expected.equals(JsonIO.readJSON(direct)) : text;
+                        assert expected.equals(JsonIO.readJSON(
+                                new ByteArrayInputStream(bytes))) : text;
+                        assert ((List) expected).get(1).equals(second.select(bytes)) : text;
+                        List got = new java.util.ArrayList();
+                        JsonPushParser p = new JsonPushParser(got::add);
+                        p.feed(bytes, 0, bytes.length);
+                        p.finish();
+                        assert got.size() == 1 && expected.equals(got.get(0)) : text;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void testRawNumbers() throws Exception {
+        System.out.println("Testing raw numbers:");
+        String text = "{\"id\":12345678901234567890123,\"price\":19.90,"
+                + "\"n\":[-7,1e400,0.10000000000000000000001,2E-3],\"i\":42}";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        Map expected = (Map) JsonIO.readJSON(bytes);
+        JsonReader rdr = new JsonReader(bytes);
+        rdr.setRawNumbers(true);
+        rdr.setCompactMaps(true);
+        Map m = (Map) rdr.readValue();
+        JsonNumber id = (JsonNumber) m.get("id");
+        assert id.toString().equals("12345678901234567890123");
+        assert id.toBigDecimal().equals(new java.math.BigDecimal("12345678901234567890123"));
+        assert id.doubleValue() == ((Number) expected.get("id")).doubleValue();
+        assert ((JsonNumber) m.get("price")).toString().equals("19.90");
+        assert ((JsonNumber) m.get("i")).intValue() == 42;
+        assert ((JsonNumber) m.get("i")).value().equals(42);
+        List n = (List) m.get("n");
+        List en = (List) expected.get("n");
+        for (int i = 0; i < n.size(); i++) {
+            assert ((JsonNumber) n.get(i)).value().equals(en.get(i));
+        }
+
+        //
+        // Written back out, the text is unchanged
+        //
+        assert JsonIO.valueToString(m).equals(text);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        JsonIO.writeJSON(bos, m);
+        assert bos.toString("UTF-8").equals(text);
+        assert expected.equals(JsonBinary.decode(JsonBinary.encode(m)));
+
+        rdr = new JsonReader(new StringReader("[1, 2.5, 3]"));
+        rdr.setRawNumbers(true);
+        rdr.setPrimitiveArrays(true);
+        assert java.util.Arrays.equals((double[]) rdr.readValue(), new double[] { 1, 2.5, 3 });
+        rdr = new JsonReader("[1, 2.50, \"x\", 3]".getBytes(StandardCharsets.UTF_8));
+        rdr.setRawNumbers(true);
+        rdr.setPrimitiveArrays(true);
+        List mixed = (List) rdr.readValue();
+        assert mixed.get(0) instanceof JsonNumber && mixed.get(1) instanceof JsonNumber;
+        assert mixed.get(3) instanceof JsonNumber;
+        assert JsonIO.valueToString(mixed).equals("[1,2.50,\"x\",3]");
+        for (String s : new String[] { "-", "1e", "[1.2.3]", "--1", "1e+" }) {
+            try {
+                rdr = new JsonReader(new StringReader(s));
+                rdr.setRawNumbers(true);
+                rdr.readValue();
+                assert false : s;
+            } catch (IOException ex) {
+                System.out.println("Got expected exception:  " + ex);
+            }
+        }
+
+        // As with JsonIO.readJSON(Reader), a number ends where its grammar does
+        rdr = new JsonReader(new StringReader("1.2.3 .5 e3"));
+        rdr.setRawNumbers(true);
+        assert rdr.readValue().toString().equals("1.2");
+        assert ((JsonNumber) rdr.readValue()).value().equals(0.3);
+        assert ((JsonNumber) rdr.readValue()).value().equals(0.5);
+        assert ((JsonNumber) rdr.readValue()).value().equals(0.0);
+    }
+
+    private static void testProjection() throws Exception {
+        System.out.println("Testing projection:");
+        String text = "{ 'records' : [ { 'id' : 1, 'name' : 'a', 'tags' : [1, {'x':2}],"
+                + " 'user' : { 'id' : 7, 'email' : 'e\\'' } },"
+                + " { 'id' : 2, 'extra' : [[[]]], 'user' : { 'email' : 'f' } }, 3 ],"
+                + " 'meta' : { 'count' : 2, 'next' : null }, 'skip' : 'me', 9 : 'nine' }";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        Object p = JsonIO.readJSON(bytes, JsonProjection.of(
+                "/records/id", "/records/user/email", "/meta", "/9"));
+        Object expected = JsonIO.readJSON(new StringReader(
+                "{ 'records' : [ { 'id' : 1, 'user' : { 'email' : 'e\\'' } },"
+                + " { 'id' : 2, 'user' : { 'email' : 'f' } }, 3 ],"
+                + " 'meta' : { 'count' : 2, 'next' : null }, 9 : 'nine' }"));
+        assert expected.equals(p) : p;
+        assert expected.equals(JsonIO.readJSON(new ByteArrayInputStream(bytes),
+                JsonProjection.of("/records/id", "/records/user/email", "/meta", "/9")));
+
+        //
+        // "*" is merged with named members, and "" keeps everything
+        //
+        p = JsonIO.readJSON(bytes, JsonProjection.of("/*/count", "/records/name", "/meta/next"));
+        expected = JsonIO.readJSON(new StringReader(
+                "{ 'records' : [ { 'name' : 'a' }, { }, 3 ],"
+                + " 'meta' : { 'count' : 2, 'next' : null }, 'skip' : 'me', 9 : 'nine' }"));
+        assert expected.equals(p) : p;
+        assert JsonIO.readJSON(bytes).equals(JsonIO.readJSON(bytes, JsonProjection.of("")));
+        assert JsonIO.readJSON(bytes, JsonProjection.of()).equals(new java.util.HashMap());
+
+        JsonReader rdr = new JsonReader(bytes);
+        rdr.setCompactMaps(true);
+        rdr.setProjection(JsonProjection.of("/records/user"));
+        assert rdr.readValue().toString().equals(
+                "{records=[{user={id=7, email=e'}}, {user={email=f}}, 3]}");
+
+        //
+        // Skipped numbers are only passed over, never converted, so a
+        // number that couldn't be converted does no harm there.
+        //
+        String bad = "{ 'skip' : 1.2e, 'huge' : 1e99999999999999999999, 'n' : [-0.5e-, 7],"
+                + " 'keep' : 12 }";
+        byte[] badBytes = bad.getBytes(StandardCharsets.UTF_8);
+        assert JsonIO.readJSON(badBytes, JsonProjection.of("/keep")).toString().equals("{keep=12}");
+        for (JsonReader r : new JsonReader[] {
+                new JsonReader(badBytes), new JsonReader(new StringReader(bad)) }) {
+            r.beginObject();
+            for (int i = 0; i < 3; i++) {
+                r.nextName();
+                r.skipValue();
+            }
+            assert r.nextName().equals("keep") && r.nextNumber().equals(12);
+            r.endObject();
+        }
+        try {
+            JsonIO.readJSON(badBytes, JsonProjection.of("/skip"));
+            assert false;
+        } catch (IOException ex) {
+            System.out.println("Got expected exception:  " + ex);
+        }
+    }
+
+    private static void testOffHeap() throws Exception {
+        System.out.println("Testing off-heap index:");
+        byte[] bytes = SAMPLE.getBytes(StandardCharsets.UTF_8);
+        Object expected = JsonIO.readJSON(bytes);
+        assert expected.equals(JsonIO.readLazyJSON(ByteBuffer.wrap(bytes), true));
+        assert JsonIO.readLazyJSON(ByteBuffer.wrap(bytes), true).equals(expected);
+        assert JsonIO.readLazyJSON(ByteBuffer.wrap(bytes), true).hashCode() == expected.hashCode();
+
+        //
+        // Duplicated keys work as in a HashMap, where the last one wins
+        //
+        String text = "{ 'a' : 1, 'b' : [], 'a' : 2, 7 : 'seven', 'c' : { 'a' : null } }";
+        ByteBuffer direct = ByteBuffer.allocateDirect(text.length());
+        direct.put(text.getBytes(StandardCharsets.UTF_8)).flip();
+        Map m = (Map) JsonIO.readLazyJSON(direct, true);
+        expected = JsonIO.readJSON(new StringReader(text));
+        assert m.size() == 4 && m.get("a").equals(2) && m.get(7).equals("seven");
+        assert m.equals(expected) && expected.equals(m);
+        assert m.containsKey("c") && !m.containsKey("d");
+
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"v\":[").append(i).append("]}");
+        }
+        bytes = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        List list = (List) JsonIO.readLazyJSON(ByteBuffer.wrap(bytes), true);
+        assert list.size() == 1000;
+        assert ((Map) list.get(999)).get("id").equals(999);
+        assert ((Map) list.get(3)).get("id").equals(3);
+        assert list.equals(JsonIO.readJSON(bytes));
+
+        JsonCursor c = JsonCursor.of(bytes);
+        assert c.token() == JsonReader.Token.BEGIN_ARRAY && c.size() == 1000;
+        assert c.down();
+        int n = 0;
+        do {
+            assert c.depth() == 1 && c.key() == null && c.size() == 2;
+            assert c.down("id") && c.value().equals(n) && "id".equals(c.key());
+            assert c.next() && c.token() == JsonReader.Token.BEGIN_ARRAY;
+            assert c.down() && c.value().equals(n) && !c.next();
+            assert c.up() && c.up();
+            n++;
+        } while (c.next());
+        assert n == 1000;
+        assert c.up() && !c.up() && !c.next();
+        JsonCursor d = c.copy();
+        assert d.down(500) && d.down("v") && d.down(0) && d.value().equals(500);
+        assert !d.down() && !d.down("x") && !d.down(0);
+        assert c.depth() == 0 && !c.down(1000) && !c.down("id");
+        c = JsonCursor.of("{}".getBytes(StandardCharsets.UTF_8));
+        assert c.token() == JsonReader.Token.BEGIN_OBJECT && !c.down() && c.size() == 0;
     }
 }